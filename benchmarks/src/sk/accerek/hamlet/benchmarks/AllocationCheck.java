@@ -0,0 +1,75 @@
+package sk.accerek.hamlet.benchmarks;
+
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.base.World;
+import sk.accerek.hamlet.world.generation.ProceduralChunkProvider;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.function.IntConsumer;
+
+/**
+ * Checks that the lookups done every frame (tile types, tiles and blocks through {@link World}) don't allocate,
+ * by counting the bytes the thread allocated over many calls. Exits with 1 if any of them allocated more than
+ * {@link #MAX_BYTES_PER_CALL} on average, so it can fail a build.
+ */
+public class AllocationCheck {
+    private static final int CHUNK_SIDE = 8;
+    private static final int POSITIONS = 4096;
+    private static final int WARMUP_CALLS = 200_000;
+    private static final int CALLS = 2_000_000;
+    // Leaves room for the odd allocation by the JVM itself, but not for one per call
+    private static final double MAX_BYTES_PER_CALL = 0.01;
+
+    private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static int[] xs;
+    private static int[] ys;
+    // Lookups store their result here, so the JIT can't skip allocations the caller would really see
+    private static Object sink;
+
+    public static void main(String[] args) {
+        HeadlessGdx.init();
+
+        World world = new World(new ProceduralChunkProvider(42));
+        for(int i = 0; i < CHUNK_SIDE * CHUNK_SIDE; i++) {
+            world.loadChunk(i % CHUNK_SIDE, i / CHUNK_SIDE);
+        }
+
+        Random random = new Random(42);
+        xs = new int[POSITIONS];
+        ys = new int[POSITIONS];
+        for(int i = 0; i < POSITIONS; i++) {
+            xs[i] = random.nextInt(CHUNK_SIDE * Chunk.CHUNK_SIZE);
+            ys[i] = random.nextInt(CHUNK_SIDE * Chunk.CHUNK_SIZE);
+        }
+
+        boolean passed = true;
+        passed &= check("World.getTileType", i -> sink = world.getTileType(xs[i], ys[i]));
+        passed &= check("World.getTile", i -> sink = world.getTile(xs[i], ys[i]));
+        passed &= check("World.getBlock", i -> sink = world.getBlock(xs[i], ys[i]));
+
+        world.dispose();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean check(String name, IntConsumer lookup) {
+        for(int i = 0; i < WARMUP_CALLS; i++) {
+            lookup.accept(i & (POSITIONS - 1));
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for(int i = 0; i < CALLS; i++) {
+            lookup.accept(i & (POSITIONS - 1));
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        double perCall = (double) allocated / CALLS;
+        boolean passed = perCall <= MAX_BYTES_PER_CALL;
+        System.out.printf("%-18s %10d bytes over %d calls, %.4f bytes/call %s%n", name, allocated, CALLS, perCall,
+                passed ? "ok" : "ALLOCATES");
+
+        return passed;
+    }
+}
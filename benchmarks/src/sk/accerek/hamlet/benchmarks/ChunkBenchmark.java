@@ -0,0 +1,57 @@
+package sk.accerek.hamlet.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.block.Block;
+import sk.accerek.hamlet.world.block.BlockType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creating blocks in a chunk: placing one over an existing block, and filling an empty chunk with them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkBenchmark {
+    @Param({"TEST", "TOWER_WALL"})
+    public String blockTypeName;
+
+    private BlockType blockType;
+    private Chunk chunk;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        HeadlessGdx.init();
+
+        blockType = BlockType.getByName(blockTypeName);
+        chunk = new Chunk(0, 0, 42);
+        fill(chunk);
+    }
+
+    @Benchmark
+    public Block setBlock() {
+        next = (next + 1) & (Chunk.CHUNK_SIZE * Chunk.CHUNK_SIZE - 1);
+        return chunk.setBlock(blockType, next >> Chunk.BIT_SIZE, next & (Chunk.CHUNK_SIZE - 1));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Chunk fillChunk() {
+        Chunk chunk = new Chunk(1, 0, 42);
+        fill(chunk);
+        return chunk;
+    }
+
+    private void fill(Chunk chunk) {
+        for(int x = 0; x < Chunk.CHUNK_SIZE; x++) {
+            for(int y = 0; y < Chunk.CHUNK_SIZE; y++) {
+                chunk.setBlock(blockType, x, y);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package sk.accerek.hamlet.benchmarks;
+
+import com.badlogic.gdx.Files;
+import com.badlogic.gdx.Gdx;
+import org.openjdk.jmh.annotations.*;
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.block.BlockType;
+import sk.accerek.hamlet.world.storage.NbtChunkCodec;
+import sk.accerek.hamlet.world.storage.NbtChunkProvider;
+import sk.accerek.hamlet.world.tile.TileType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and loading a chunk with {@code blockCount} blocks, both through {@link NbtChunkProvider} with a world
+ * in the working directory, and through {@link NbtChunkCodec} on its own in memory. The codec benchmarks use
+ * format {@code formatVersion}, so the old and the palette-encoded format can be compared; the encoded size of
+ * each is printed during setup. The provider always writes the current format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkStorageBenchmark {
+    private static final String WORLD_NAME = "benchmark-storage";
+
+    @Param({"0", "64", "256"})
+    public int blockCount;
+
+    @Param({"1", "2"})
+    public int formatVersion;
+
+    private NbtChunkProvider provider;
+    private NbtChunkCodec codec;
+    private Chunk chunk;
+    private byte[] encoded;
+    private ByteArrayOutputStream output = new ByteArrayOutputStream(8192);
+
+    @Setup
+    public void setUp() throws IOException {
+        HeadlessGdx.init();
+
+        Gdx.files.local("worlds/" + WORLD_NAME).deleteDirectory();
+        provider = new NbtChunkProvider(WORLD_NAME, Files.FileType.Local, 42);
+        codec = new NbtChunkCodec(WORLD_NAME, 42);
+
+        chunk = new Chunk(0, 0, 42);
+        for(int i = 0; i < Chunk.CHUNK_SIZE * Chunk.CHUNK_SIZE; i++) {
+            int x = i >> Chunk.BIT_SIZE;
+            int y = i & (Chunk.CHUNK_SIZE - 1);
+
+            chunk.setTile((x + y) % 3 == 0 ? TileType.ROCKY_FLOOR : TileType.GRASS, x, y);
+            if(i < blockCount) {
+                chunk.setBlock(i % 2 == 0 ? BlockType.TOWER_WALL : BlockType.TEST, x, y);
+            }
+        }
+
+        provider.unload(chunk);
+
+        codec.encode(chunk, output, formatVersion);
+        encoded = output.toByteArray();
+        System.out.println("Format " + formatVersion + ", " + blockCount + " blocks: " + encoded.length + " bytes encoded");
+    }
+
+    @TearDown
+    public void tearDown() {
+        Gdx.files.local("worlds/" + WORLD_NAME).deleteDirectory();
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        provider.unload(chunk);
+    }
+
+    @Benchmark
+    public Optional<Chunk> load() {
+        return provider.provide(0, 0);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        output.reset();
+        codec.encode(chunk, output, formatVersion);
+        return output.toByteArray();
+    }
+
+    @Benchmark
+    public Optional<Chunk> decode() {
+        return codec.decode(0, 0, new ByteArrayInputStream(encoded));
+    }
+}
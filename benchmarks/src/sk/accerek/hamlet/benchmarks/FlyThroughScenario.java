@@ -0,0 +1,367 @@
+package sk.accerek.hamlet.benchmarks;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+import org.apache.commons.cli.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sk.accerek.hamlet.Hamlet;
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.base.ChunkProvider;
+import sk.accerek.hamlet.world.base.World;
+import sk.accerek.hamlet.world.block.BlockType;
+import sk.accerek.hamlet.world.generation.LayeredChunkProvider;
+import sk.accerek.hamlet.world.generation.ProceduralChunkProvider;
+import sk.accerek.hamlet.world.storage.NbtChunkProvider;
+import sk.accerek.hamlet.world.tile.TileType;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Flies the camera along a fixed path over a fresh world, hovering the mouse and painting with the brush on the
+ * way, and reports how long the frames took. Chunks are generated and saved to a temporary directory through
+ * {@link NbtChunkProvider}, so the path's way back loads the chunks it changed on the way out from disk.
+ * <p>
+ * Everything that's up to the scenario (the path, the mouse positions, the edits) is the same on every run, and
+ * simulated time advances by exactly one 1/60 s frame per frame. By default frames are also spaced 1/60 s apart
+ * in real time, so chunk streaming keeps up like it would in the game. {@code --unpaced} runs them back to back.
+ * Tile and block textures are packed into an atlas like in the game, unless {@code --no-atlas} is given.
+ */
+public class FlyThroughScenario {
+    private static final Logger logger = LoggerFactory.getLogger(FlyThroughScenario.class);
+
+    private static final int HOVER_INTERVAL = 1;
+    private static final int BRUSH_INTERVAL = 4;
+    private static final int BLOCK_INTERVAL = 16;
+    private static final int BRUSH_RADIUS = 4;
+    private static final int HEAP_SAMPLE_INTERVAL = 60;
+
+    // Chunk positions the camera flies to in a straight line, and what's done on the way
+    private static final Waypoint[] PATH = {
+            new Waypoint(0, 0, 1, Activity.NONE),
+            new Waypoint(12, 0, 8, Activity.HOVER),
+            new Waypoint(12, 8, 6, Activity.BRUSH),
+            new Waypoint(-6, 8, 10, Activity.HOVER),
+            new Waypoint(-6, -4, 6, Activity.BRUSH),
+            new Waypoint(12, 0, 10, Activity.HOVER),
+            new Waypoint(0, 0, 6, Activity.NONE)
+    };
+
+    public static void main(String[] args) throws IOException {
+        Options options = new Options();
+        options.addOption(Option.builder("s").longOpt("seed").hasArg().argName("seed").desc("Seed of the generated world, 42 by default").build());
+        options.addOption(Option.builder("o").longOpt("output").hasArg().argName("file").desc("Also write the results to a JSON file").build());
+        options.addOption(Option.builder().longOpt("unpaced").desc("Don't wait for the next frame's time, run frames back to back").build());
+        options.addOption(Option.builder().longOpt("no-atlas").desc("Don't pack tile and block textures into an atlas").build());
+        options.addOption(Option.builder().longOpt("keep-world").desc("Don't delete the world directory afterwards").build());
+        options.addOption(Option.builder("h").longOpt("help").desc("Show a list of arguments").build());
+
+        CommandLine commandLine;
+        try {
+            commandLine = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            logger.error(e.getMessage());
+            new HelpFormatter().printHelp("flythrough", options);
+            System.exit(1);
+            return;
+        }
+
+        if(commandLine.hasOption("help")) {
+            new HelpFormatter().printHelp("flythrough", options);
+            return;
+        }
+
+        long seed = Long.parseLong(commandLine.getOptionValue("seed", "42"));
+
+        HeadlessGdx.init();
+        if(!commandLine.hasOption("no-atlas")) {
+            Hamlet.get().getTextureProvider().packAtlas("tiles", "blocks");
+        }
+
+        File worldDirectory = Files.createTempDirectory("hamlet-flythrough").toFile();
+        Result result;
+        try {
+            result = new FlyThroughScenario(seed, new FileHandle(worldDirectory), !commandLine.hasOption("unpaced")).run();
+        } finally {
+            if(!commandLine.hasOption("keep-world")) {
+                new FileHandle(worldDirectory).deleteDirectory();
+            } else {
+                logger.warn("Kept the world in {}", worldDirectory);
+            }
+        }
+
+        result.print();
+        if(commandLine.hasOption("output")) {
+            result.write(new File(commandLine.getOptionValue("output")));
+        }
+
+        System.exit(0);
+    }
+
+    private final boolean paced;
+    private final CountingChunkProvider chunkProvider;
+    private final World world;
+    private final SpriteBatch spriteBatch = new SpriteBatch();
+    private final Camera camera = Hamlet.get().getCamera();
+    private final Random random = new Random(0);
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private FlyThroughScenario(long seed, FileHandle worldDirectory, boolean paced) {
+        this.paced = paced;
+        this.chunkProvider = new CountingChunkProvider(new LayeredChunkProvider(
+                new NbtChunkProvider(worldDirectory, seed),
+                new ProceduralChunkProvider(seed)));
+        this.world = new World(chunkProvider);
+    }
+
+    private Result run() {
+        int frames = 0;
+        for(int i = 1; i < PATH.length; i++) {
+            frames += Math.round(PATH[i].seconds / HeadlessGdx.FRAME_TIME);
+        }
+
+        long[] frameTimes = new long[frames];
+        long[] frameCpuTimes = new long[frames];
+        long[] frameDrawCalls = new long[frames];
+        long peakHeap = 0;
+
+        long heapBefore = usedHeapAfterGc();
+        long frameInterval = (long) (HeadlessGdx.FRAME_TIME * 1e9);
+        long start = System.nanoTime();
+
+        int frame = 0;
+        for(int i = 1; i < PATH.length; i++) {
+            Waypoint from = PATH[i - 1];
+            Waypoint to = PATH[i];
+            int segmentFrames = Math.round(to.seconds / HeadlessGdx.FRAME_TIME);
+
+            for(int segmentFrame = 0; segmentFrame < segmentFrames; segmentFrame++, frame++) {
+                float progress = (segmentFrame + 1) / (float) segmentFrames;
+                camera.position.set(
+                        MathUtils.lerp(from.chunkX, to.chunkX, progress) * Chunk.CHUNK_PIXEL_SIZE,
+                        MathUtils.lerp(from.chunkY, to.chunkY, progress) * Chunk.CHUNK_PIXEL_SIZE, 0);
+                camera.update();
+
+                long frameStart = System.nanoTime();
+                long frameCpuStart = threads.getCurrentThreadCpuTime();
+                int drawCallsBefore = HeadlessGdx.getDrawCalls();
+
+                act(to.activity, frame);
+
+                spriteBatch.begin();
+                world.render(spriteBatch);
+                spriteBatch.end();
+
+                frameTimes[frame] = System.nanoTime() - frameStart;
+                frameCpuTimes[frame] = threads.getCurrentThreadCpuTime() - frameCpuStart;
+                frameDrawCalls[frame] = HeadlessGdx.getDrawCalls() - drawCallsBefore;
+
+                if(frame % HEAP_SAMPLE_INTERVAL == 0) {
+                    peakHeap = Math.max(peakHeap, usedHeap());
+                }
+
+                if(paced) {
+                    long wait = start + (frame + 1) * frameInterval - System.nanoTime();
+                    if(wait > 0) {
+                        try {
+                            Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int loads = chunkProvider.loads.get();
+        long heapAfter = usedHeapAfterGc();
+
+        world.dispose();
+        spriteBatch.dispose();
+
+        return new Result(frameTimes, frameCpuTimes, frameDrawCalls, seconds, loads, chunkProvider.saves.get(), heapBefore, heapAfter, Math.max(peakHeap, heapAfter));
+    }
+
+    /**
+     * Hovers the mouse over, or paints at, a random position within the window, like the test screen does with
+     * the real mouse.
+     */
+    private void act(Activity activity, int frame) {
+        if(activity == Activity.NONE) {
+            return;
+        }
+
+        Vector3 position = camera.position;
+        int tileX = MathUtils.floor((position.x + (random.nextFloat() - .5f) * Hamlet.WINDOW_SIZE.x) / Chunk.GRID_SIZE);
+        int tileY = MathUtils.floor((position.y + (random.nextFloat() - .5f) * Hamlet.WINDOW_SIZE.y) / Chunk.GRID_SIZE);
+
+        if(activity == Activity.HOVER && frame % HOVER_INTERVAL == 0) {
+            world.getTile(tileX, tileY);
+        } else if(activity == Activity.BRUSH) {
+            world.getTile(tileX, tileY);
+
+            if(frame % BLOCK_INTERVAL == 0) {
+                world.setBlock(BlockType.TOWER_WALL, tileX, tileY);
+            } else if(frame % BRUSH_INTERVAL == 0) {
+                world.fillCircle(frame % (BRUSH_INTERVAL * 2) == 0 ? TileType.GRASS : TileType.ROCKY_FLOOR, tileX, tileY, BRUSH_RADIUS);
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        System.gc();
+        return usedHeap();
+    }
+
+    private enum Activity {
+        NONE, HOVER, BRUSH
+    }
+
+    private static class Waypoint {
+        private final int chunkX;
+        private final int chunkY;
+        private final float seconds;
+        private final Activity activity;
+
+        private Waypoint(int chunkX, int chunkY, float seconds, Activity activity) {
+            this.chunkX = chunkX;
+            this.chunkY = chunkY;
+            this.seconds = seconds;
+            this.activity = activity;
+        }
+    }
+
+    /**
+     * Counts the chunks that had to be loaded or saved, on whichever thread that happened.
+     */
+    private static class CountingChunkProvider implements ChunkProvider {
+        private final ChunkProvider delegate;
+        private final AtomicInteger loads = new AtomicInteger();
+        private final AtomicInteger saves = new AtomicInteger();
+
+        private CountingChunkProvider(ChunkProvider delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Optional<Chunk> provide(int x, int y) {
+            loads.incrementAndGet();
+            return delegate.provide(x, y);
+        }
+
+        @Override
+        public void unload(Chunk chunk) throws IOException {
+            saves.incrementAndGet();
+            delegate.unload(chunk);
+        }
+
+        @Override
+        public boolean isWritable() {
+            return delegate.isWritable();
+        }
+
+        @Override
+        public boolean exists(int x, int y) {
+            return delegate.exists(x, y);
+        }
+
+        @Override
+        public void dispose() {
+            delegate.dispose();
+        }
+    }
+
+    private static class Result {
+        private final long[] frameTimes;
+        private final long[] frameCpuTimes;
+        private final long[] frameDrawCalls;
+        private final double seconds;
+        private final int loads;
+        private final int saves;
+        private final long heapBefore;
+        private final long heapAfter;
+        private final long peakHeap;
+
+        private Result(long[] frameTimes, long[] frameCpuTimes, long[] frameDrawCalls, double seconds, int loads, int saves, long heapBefore, long heapAfter, long peakHeap) {
+            this.frameTimes = frameTimes.clone();
+            this.frameCpuTimes = frameCpuTimes.clone();
+            this.frameDrawCalls = frameDrawCalls.clone();
+            this.seconds = seconds;
+            this.loads = loads;
+            this.saves = saves;
+            this.heapBefore = heapBefore;
+            this.heapAfter = heapAfter;
+            this.peakHeap = peakHeap;
+
+            Arrays.sort(this.frameTimes);
+            Arrays.sort(this.frameCpuTimes);
+            Arrays.sort(this.frameDrawCalls);
+        }
+
+        private void print() {
+            System.out.printf("%d frames in %.2f s, %d chunk loads (%.2f per second), %d chunk saves%n",
+                    frameTimes.length, seconds, loads, loads / seconds, saves);
+            System.out.printf("Frame time:     p50 %.2f ms, p99 %.2f ms, max %.2f ms%n", percentile(frameTimes, .5) / 1e6,
+                    percentile(frameTimes, .99) / 1e6, frameTimes[frameTimes.length - 1] / 1e6);
+            System.out.printf("Frame CPU time: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n", percentile(frameCpuTimes, .5) / 1e6,
+                    percentile(frameCpuTimes, .99) / 1e6, frameCpuTimes[frameCpuTimes.length - 1] / 1e6);
+            System.out.printf("Draw calls:     p50 %d, p99 %d, max %d per frame%n", percentile(frameDrawCalls, .5),
+                    percentile(frameDrawCalls, .99), frameDrawCalls[frameDrawCalls.length - 1]);
+            System.out.printf("Heap: %.2f MB before, %.2f MB after (%.2f MB growth), %.2f MB peak%n", megabytes(heapBefore),
+                    megabytes(heapAfter), megabytes(heapAfter - heapBefore), megabytes(peakHeap));
+        }
+
+        private void write(File file) throws IOException {
+            try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+                writer.println("{");
+                writer.println("  \"frames\": " + frameTimes.length + ",");
+                writer.println("  \"seconds\": " + seconds + ",");
+                writer.println("  \"chunkLoads\": " + loads + ",");
+                writer.println("  \"chunkLoadsPerSecond\": " + loads / seconds + ",");
+                writer.println("  \"chunkSaves\": " + saves + ",");
+                writer.println("  \"frameTimeP50Ns\": " + percentile(frameTimes, .5) + ",");
+                writer.println("  \"frameTimeP99Ns\": " + percentile(frameTimes, .99) + ",");
+                writer.println("  \"frameTimeMaxNs\": " + frameTimes[frameTimes.length - 1] + ",");
+                writer.println("  \"frameCpuTimeP50Ns\": " + percentile(frameCpuTimes, .5) + ",");
+                writer.println("  \"frameCpuTimeP99Ns\": " + percentile(frameCpuTimes, .99) + ",");
+                writer.println("  \"frameCpuTimeMaxNs\": " + frameCpuTimes[frameCpuTimes.length - 1] + ",");
+                writer.println("  \"drawCallsP50\": " + percentile(frameDrawCalls, .5) + ",");
+                writer.println("  \"drawCallsP99\": " + percentile(frameDrawCalls, .99) + ",");
+                writer.println("  \"drawCallsMax\": " + frameDrawCalls[frameDrawCalls.length - 1] + ",");
+                writer.println("  \"heapBeforeBytes\": " + heapBefore + ",");
+                writer.println("  \"heapAfterBytes\": " + heapAfter + ",");
+                writer.println("  \"heapGrowthBytes\": " + (heapAfter - heapBefore) + ",");
+                writer.println("  \"heapPeakBytes\": " + peakHeap);
+                writer.println("}");
+            }
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+        }
+
+        private static double megabytes(long bytes) {
+            return bytes / (1024.0 * 1024.0);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package sk.accerek.hamlet.benchmarks;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Graphics;
+import com.badlogic.gdx.backends.headless.HeadlessFiles;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.physics.box2d.Box2D;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import sk.accerek.hamlet.Hamlet;
+import sk.accerek.hamlet.Platform;
+
+import java.lang.reflect.Proxy;
+import java.nio.IntBuffer;
+
+/**
+ * Gets libGDX and {@link Hamlet} far enough to create and update a {@link sk.accerek.hamlet.world.base.World}
+ * without a window or a GPU. Files come from the headless backend, while GL, graphics and the application are
+ * stand-ins: GL calls do nothing, shaders and frame buffers always report success, and every frame is 1/60 s.
+ * Draw calls are still counted, see {@link #getDrawCalls()}.
+ */
+public final class HeadlessGdx {
+    public static final float FRAME_TIME = 1f / 60;
+
+    private static boolean initialised = false;
+    private static int drawCalls = 0;
+
+    private HeadlessGdx() { }
+
+    public static synchronized void init() {
+        if(initialised) {
+            return;
+        }
+
+        GdxNativesLoader.load();
+        Box2D.init();
+
+        Gdx.files = new HeadlessFiles();
+        Gdx.gl = Gdx.gl20 = mockGl();
+        Gdx.graphics = mockGraphics();
+        Gdx.app = mockApplication();
+
+        Hamlet.initialise(new HeadlessPlatform()).createHeadless();
+
+        initialised = true;
+    }
+
+    /**
+     * Returns how many draw calls reached GL since {@link #init()}. Meant for the thread that renders, as it isn't
+     * synchronised.
+     */
+    public static int getDrawCalls() {
+        return drawCalls;
+    }
+
+    private static GL20 mockGl() {
+        return (GL20) Proxy.newProxyInstance(GL20.class.getClassLoader(), new Class<?>[] { GL20.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "glCheckFramebufferStatus":
+                    return GL20.GL_FRAMEBUFFER_COMPLETE;
+                case "glGetShaderiv":
+                case "glGetProgramiv":
+                    // Compile and link status, the shader programs would refuse to work without it
+                    ((IntBuffer) args[2]).put(0, 1);
+                    return null;
+                case "glDrawElements":
+                case "glDrawArrays":
+                    drawCalls++;
+                    return null;
+                default:
+                    return defaultValue(method.getReturnType(), 1);
+            }
+        });
+    }
+
+    private static Graphics mockGraphics() {
+        return (Graphics) Proxy.newProxyInstance(Graphics.class.getClassLoader(), new Class<?>[] { Graphics.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getWidth":
+                case "getBackBufferWidth":
+                    return (int) Hamlet.WINDOW_SIZE.x;
+                case "getHeight":
+                case "getBackBufferHeight":
+                    return (int) Hamlet.WINDOW_SIZE.y;
+                case "getDeltaTime":
+                case "getRawDeltaTime":
+                    return FRAME_TIME;
+                case "getGL20":
+                    return Gdx.gl20;
+                default:
+                    return defaultValue(method.getReturnType(), 0);
+            }
+        });
+    }
+
+    private static Application mockApplication() {
+        return (Application) Proxy.newProxyInstance(Application.class.getClassLoader(), new Class<?>[] { Application.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getType":
+                    return Application.ApplicationType.HeadlessDesktop;
+                case "postRunnable":
+                    ((Runnable) args[0]).run();
+                    return null;
+                default:
+                    return defaultValue(method.getReturnType(), 0);
+            }
+        });
+    }
+
+    private static Object defaultValue(Class<?> type, int number) {
+        if(type == int.class) {
+            return number;
+        } else if(type == long.class) {
+            return (long) number;
+        } else if(type == float.class) {
+            return (float) number;
+        } else if(type == boolean.class) {
+            return false;
+        } else if(type == String.class) {
+            return "";
+        }
+
+        return null;
+    }
+
+    private static class HeadlessPlatform implements Platform {
+        @Override
+        public void nativeUpdate() {
+
+        }
+
+        @Override
+        public void showNativeDialog(String title, String message, int type) {
+
+        }
+
+        @Override
+        public boolean isFpsCapped() {
+            return false;
+        }
+
+        @Override
+        public boolean isDebugEnabled() {
+            return false;
+        }
+    }
+}
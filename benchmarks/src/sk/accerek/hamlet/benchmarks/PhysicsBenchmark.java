@@ -0,0 +1,80 @@
+package sk.accerek.hamlet.benchmarks;
+
+import box2dLight.PointLight;
+import box2dLight.RayHandler;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import org.openjdk.jmh.annotations.*;
+import sk.accerek.hamlet.Hamlet;
+import sk.accerek.hamlet.world.TestChunkProvider;
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.base.World;
+import sk.accerek.hamlet.world.block.BlockType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stepping the Box2D world and updating the dynamic lights over a 64x64 tile grid of 8x8 rooms, whose 960 wall
+ * blocks are merged into the chunks' colliders, lit by four 256-ray point lights. GL calls do nothing here, so
+ * {@code updateAndRender} measures the rays and the meshes built from them, not the GPU.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhysicsBenchmark {
+    private static final int SIZE = 64;
+    private static final int ROOM_SIZE = 8;
+
+    private World world;
+    private com.badlogic.gdx.physics.box2d.World box2dWorld;
+    private RayHandler rayHandler;
+
+    @Setup
+    public void setUp() {
+        HeadlessGdx.init();
+
+        world = new World(new TestChunkProvider());
+        for(int x = 0; x < SIZE; x++) {
+            for(int y = 0; y < SIZE; y++) {
+                if(x % ROOM_SIZE == 0 || y % ROOM_SIZE == 0) {
+                    world.setBlock(BlockType.TOWER_WALL, x, y);
+                }
+            }
+        }
+
+        int chunks = SIZE / Chunk.CHUNK_SIZE;
+        world.getChunkColliders().update();
+        world.getChunkColliders().updateActivation(chunks / 2, chunks / 2, chunks);
+
+        float centre = SIZE / 2 * Chunk.GRID_SIZE;
+        rayHandler = world.getRayHandler();
+        for(int i = 0; i < 4; i++) {
+            new PointLight(rayHandler, 256, Color.WHITE, 1500, centre + i * 300, centre + 17);
+        }
+
+        OrthographicCamera camera = Hamlet.get().getCamera();
+        camera.position.set(centre, centre, 0);
+        camera.update();
+        rayHandler.setCombinedMatrix(camera);
+
+        box2dWorld = world.getBox2dWorld();
+    }
+
+    @TearDown
+    public void tearDown() {
+        world.dispose();
+    }
+
+    @Benchmark
+    public void step() {
+        box2dWorld.step(HeadlessGdx.FRAME_TIME, 6, 2);
+    }
+
+    @Benchmark
+    public void updateAndRender() {
+        rayHandler.updateAndRender();
+    }
+}
@@ -0,0 +1,64 @@
+package sk.accerek.hamlet.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import sk.accerek.hamlet.Hamlet;
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.base.ChunkRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the chunks in view among {@code chunkCount} loaded ones, the way the world does it every frame, and
+ * going over all loaded chunks, the way eviction does it whenever the focus moves.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VisibleChunksBenchmark {
+    // A window's worth of chunks, plus one on each side for overdraw
+    private static final int VIEW_WIDTH = (int) Math.ceil(Hamlet.WINDOW_SIZE.x / Chunk.CHUNK_PIXEL_SIZE) + 2;
+    private static final int VIEW_HEIGHT = (int) Math.ceil(Hamlet.WINDOW_SIZE.y / Chunk.CHUNK_PIXEL_SIZE) + 2;
+
+    @Param({"64", "512", "4096"})
+    public int chunkCount;
+
+    private final ChunkRegistry registry = new ChunkRegistry();
+    private final List<Chunk> visible = new ArrayList<>();
+    private int side;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        side = (int) Math.ceil(Math.sqrt(chunkCount));
+        for(int i = 0; i < chunkCount; i++) {
+            registry.add(new Chunk(i % side, i / side));
+        }
+    }
+
+    @Benchmark
+    public void queryVisible(Blackhole blackhole) {
+        // Pan across the loaded area, so the view lands on different sectors
+        next = (next + 1) % side;
+        int minX = next - VIEW_WIDTH / 2;
+        int minY = side / 2 - VIEW_HEIGHT / 2;
+
+        visible.clear();
+        registry.query(minX, minY, minX + VIEW_WIDTH - 1, minY + VIEW_HEIGHT - 1, visible);
+        for(int i = 0; i < visible.size(); i++) {
+            blackhole.consume(visible.get(i));
+        }
+    }
+
+    @Benchmark
+    public void iterateLoaded(Blackhole blackhole) {
+        for(Chunk chunk : registry) {
+            blackhole.consume(chunk);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package sk.accerek.hamlet.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.base.World;
+import sk.accerek.hamlet.world.block.Block;
+import sk.accerek.hamlet.world.generation.ProceduralChunkProvider;
+import sk.accerek.hamlet.world.tile.Tile;
+import sk.accerek.hamlet.world.tile.TileType;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tile and block access through {@link World} on loaded, generated chunks, at random positions spread over all
+ * of them. Nothing is streamed in while measuring, every position is in a loaded chunk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorldAccessBenchmark {
+    private static final int POSITIONS = 4096;
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int chunkCount;
+
+    private World world;
+    private int[] xs;
+    private int[] ys;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        HeadlessGdx.init();
+
+        world = new World(new ProceduralChunkProvider(42));
+
+        int side = (int) Math.ceil(Math.sqrt(chunkCount));
+        for(int i = 0; i < chunkCount; i++) {
+            world.loadChunk(i % side, i / side);
+        }
+
+        Random random = new Random(42);
+        xs = new int[POSITIONS];
+        ys = new int[POSITIONS];
+        for(int i = 0; i < POSITIONS; i++) {
+            int chunk = random.nextInt(chunkCount);
+            xs[i] = (chunk % side) * Chunk.CHUNK_SIZE + random.nextInt(Chunk.CHUNK_SIZE);
+            ys[i] = (chunk / side) * Chunk.CHUNK_SIZE + random.nextInt(Chunk.CHUNK_SIZE);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        world.dispose();
+    }
+
+    @Benchmark
+    public TileType getTileType() {
+        int i = next();
+        return world.getTileType(xs[i], ys[i]);
+    }
+
+    @Benchmark
+    public Tile getTile() {
+        int i = next();
+        return world.getTile(xs[i], ys[i]);
+    }
+
+    @Benchmark
+    public void setTile() {
+        int i = next();
+        world.setTile((i & 1) == 0 ? TileType.GRASS : TileType.ROCKY_FLOOR, xs[i], ys[i]);
+    }
+
+    @Benchmark
+    public Block getBlock() {
+        int i = next();
+        return world.getBlock(xs[i], ys[i]);
+    }
+
+    private int next() {
+        next = (next + 1) & (POSITIONS - 1);
+        return next;
+    }
+}
@@ -6,6 +6,7 @@ import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.profiling.GLProfiler;
 import com.badlogic.gdx.input.GestureDetector;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.math.Vector3;
@@ -62,6 +63,10 @@ public class Hamlet extends Game {
     private @Getter AssetManager assetManager;
     private @Getter TextureProvider textureProvider;
 
+    private GLProfiler profiler;
+    private @Getter int lastFrameDrawCalls;
+    private @Getter int lastFrameTextureBindings;
+
     private @Getter TextRenderer textRenderer;
 
     private @Getter EventBus eventBus;
@@ -124,6 +129,12 @@ public class Hamlet extends Game {
         textRenderer = new TextRenderer(spriteBatch);
 
         textureProvider = new TextureProvider();
+        textureProvider.packAtlas("tiles", "blocks");
+
+        profiler = new GLProfiler(Gdx.graphics);
+        if(isDebugEnabled()) {
+            profiler.enable();
+        }
 
         camera.position.set(WINDOW_SIZE.x / 2, WINDOW_SIZE.y / 2, 0);
         uiCamera.position.set(WINDOW_SIZE.x / 2, WINDOW_SIZE.y / 2, 0);
@@ -133,6 +144,22 @@ public class Hamlet extends Game {
         setScreen(new TestScreen());
     }
 
+    /**
+     * Sets up only what a {@link sk.accerek.hamlet.world.base.World} needs to run, without modules, input or
+     * screens, for benchmarks and tools running worlds on the headless backend.
+     */
+    public void createHeadless() {
+        eventBus = new EventBus("main-event-bus");
+        modules = ImmutableList.of();
+
+        camera = new OrthographicCamera(WINDOW_SIZE.x, WINDOW_SIZE.y);
+        camera.position.set(WINDOW_SIZE.x / 2, WINDOW_SIZE.y / 2, 0);
+        camera.update();
+
+        assetManager = new AssetManager();
+        textureProvider = new TextureProvider();
+    }
+
 	public void renderUi(Runnable uiTask) {
         spriteBatch.flush();
         viewport.setCamera(uiCamera);
@@ -157,6 +184,12 @@ public class Hamlet extends Game {
         super.render();
         spriteBatch.end();
 
+        if(profiler.isEnabled()) {
+            lastFrameDrawCalls = profiler.getDrawCalls();
+            lastFrameTextureBindings = profiler.getTextureBindings();
+            profiler.reset();
+        }
+
         platform.nativeUpdate();
 
         if(Gdx.input.isKeyJustPressed(Input.Keys.F)) {
@@ -185,6 +218,15 @@ public class Hamlet extends Game {
         VIEW_SIZE = new Vector2(width, height);
     }
 
+    @Override
+    public void dispose() {
+        super.dispose();
+
+        if(screen != null) {
+            screen.dispose();
+        }
+    }
+
     @Override
     public void setScreen(Screen screen) {
         logger.debug("Changing screen to an instance of " + screen.getClass().getCanonicalName());
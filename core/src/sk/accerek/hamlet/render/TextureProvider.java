@@ -5,6 +5,9 @@ import com.badlogic.gdx.assets.AssetManager;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.PixmapPacker;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import lombok.Getter;
@@ -13,9 +16,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sk.accerek.hamlet.Hamlet;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class TextureProvider {
+    private static final int ATLAS_PAGE_SIZE = 1024;
+    private static final long GL_THREAD_TIMEOUT = 2000;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final AssetManager assetManager;
     private final Cache<String, Texture> textureCache = CacheBuilder.newBuilder()
@@ -24,9 +35,14 @@ public class TextureProvider {
             .build();
 
     private final @Getter Texture backupTexture;
+    private final Thread glThread;
+
+    private final Map<String, TextureRegion> regionCache = new ConcurrentHashMap<>();
+    private TextureAtlas atlas;
 
     public TextureProvider() {
         this.assetManager = Hamlet.get().getAssetManager();
+        this.glThread = Thread.currentThread();
 
         Pixmap missingPixmap = new Pixmap(64, 64, Pixmap.Format.RGBA8888);
         missingPixmap.setColor(0, 0, 0, 1);
@@ -48,6 +64,10 @@ public class TextureProvider {
             return cached;
         }
 
+        if(Thread.currentThread() != glThread) {
+            return getTextureOnGlThread(key);
+        }
+
         FileHandle handle = Gdx.files.internal(key);
         if(handle.exists()) {
             Texture texture = new Texture(handle);
@@ -59,4 +79,106 @@ public class TextureProvider {
         logger.error("Invalid texture: {}", key);
         return backupTexture;
     }
+
+    /**
+     * Looks the texture up in the packed atlas first, falling back to a region spanning a standalone texture.
+     */
+    public @NonNull TextureRegion getRegion(String key) {
+        TextureRegion region = regionCache.get(key);
+        if(region != null) {
+            return region;
+        }
+
+        if(atlas != null) {
+            region = atlas.findRegion(key);
+        }
+
+        if(region == null) {
+            region = new TextureRegion(getTexture(key));
+        }
+
+        // A backup texture handed out off the GL thread may just mean the GL thread was busy, so ask again next time
+        if(Thread.currentThread() == glThread || region.getTexture() != backupTexture) {
+            regionCache.put(key, region);
+        }
+
+        return region;
+    }
+
+    /**
+     * Packs every PNG below the given internal directories into atlas pages, so sprites using them can be drawn
+     * without switching textures. Regions are named by their path, like the keys of {@link #getTexture(String)}.
+     * Must be called on the GL thread.
+     */
+    public void packAtlas(String... directories) {
+        PixmapPacker packer = new PixmapPacker(ATLAS_PAGE_SIZE, ATLAS_PAGE_SIZE, Pixmap.Format.RGBA8888, 2, true);
+
+        int packed = 0;
+        for(String directory : directories) {
+            packed += packDirectory(packer, Gdx.files.internal(directory), directory);
+        }
+
+        if(atlas != null) {
+            atlas.dispose();
+        }
+
+        atlas = packer.generateTextureAtlas(Texture.TextureFilter.Nearest, Texture.TextureFilter.Nearest, false);
+        packer.dispose();
+        regionCache.clear();
+
+        logger.info("Packed {} textures into {} atlas page(s)", packed, atlas.getTextures().size);
+    }
+
+    private int packDirectory(PixmapPacker packer, FileHandle directory, String path) {
+        int packed = 0;
+
+        for(FileHandle child : directory.list()) {
+            String childPath = path + "/" + child.name();
+
+            if(child.isDirectory()) {
+                packed += packDirectory(packer, child, childPath);
+                continue;
+            }
+
+            if(!child.extension().equalsIgnoreCase("png")) {
+                continue;
+            }
+
+            Pixmap pixmap = new Pixmap(child);
+            if(pixmap.getWidth() > ATLAS_PAGE_SIZE || pixmap.getHeight() > ATLAS_PAGE_SIZE) {
+                logger.warn("\"{}\" is too large for the atlas, it'll be loaded on its own", childPath);
+                pixmap.dispose();
+                continue;
+            }
+
+            packer.pack(childPath, pixmap);
+            pixmap.dispose();
+            packed++;
+        }
+
+        return packed;
+    }
+
+    /**
+     * Loads the texture on the GL thread and waits for it, but only for so long: if the GL thread is itself
+     * waiting on the caller, the backup texture is returned instead of deadlocking. The texture still ends up in
+     * the cache once the GL thread gets to it. Nothing in chunk loading should get here, as tiles and blocks
+     * only look their regions up when they're first drawn.
+     */
+    private Texture getTextureOnGlThread(String key) {
+        FutureTask<Texture> task = new FutureTask<>(() -> getTexture(key));
+        Gdx.app.postRunnable(task);
+
+        try {
+            return task.get(GL_THREAD_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            logger.warn("Timed out waiting for the GL thread to load \"{}\"", key);
+        } catch (ExecutionException e) {
+            logger.error("Failed to load texture \"" + key + "\" on the GL thread", e);
+        }
+
+        return backupTexture;
+    }
 }
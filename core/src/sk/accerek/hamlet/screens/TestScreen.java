@@ -22,10 +22,13 @@ import sk.accerek.hamlet.render.text.TextRenderer;
 import sk.accerek.hamlet.render.text.font.FontStyle;
 import sk.accerek.hamlet.world.TestChunkProvider;
 import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.base.ChunkState;
 import sk.accerek.hamlet.world.base.Pair;
 import sk.accerek.hamlet.world.base.World;
 import sk.accerek.hamlet.world.block.Block;
 import sk.accerek.hamlet.world.block.BlockType;
+import sk.accerek.hamlet.world.generation.LayeredChunkProvider;
+import sk.accerek.hamlet.world.generation.ProceduralChunkProvider;
 import sk.accerek.hamlet.world.storage.NbtChunkProvider;
 import sk.accerek.hamlet.world.storage.WorldLoaderException;
 import sk.accerek.hamlet.world.tile.Tile;
@@ -35,7 +38,9 @@ import java.util.Properties;
 import java.util.Random;
 
 public class TestScreen extends GuiScreen {
-    private World world = new World(new NbtChunkProvider("test", Files.FileType.Internal));
+    private World world = new World(new LayeredChunkProvider(
+            new NbtChunkProvider("test", Files.FileType.Internal),
+            new ProceduralChunkProvider(0)));
     private SpriteBatch spriteBatch = Hamlet.get().getSpriteBatch();
     private Camera camera = Hamlet.get().getCamera();
     private TextRenderer textRenderer = Hamlet.get().getTextRenderer();
@@ -72,14 +77,14 @@ public class TestScreen extends GuiScreen {
         NinePatch ninePatch = new NinePatch(new Texture("test.png"), 3, 3, 3, 3);
         npd = new NinePatchDrawable(ninePatch);
 
-        new PointLight(world.getRayHandler(), 500, Color.WHITE, 30 * Chunk.GRID_SIZE, 0, 0);
+        world.getStaticLighting().addPointLight(500, Color.WHITE, 30 * Chunk.GRID_SIZE, 0, 0);
 
         world.setAmbientLight(.4f, .4f, .6f, .4f);
 
         x = Hamlet.WINDOW_SIZE.x / 2;
         y = Hamlet.WINDOW_SIZE.y / 2;
 
-        pointLight = new PointLight(world.getRayHandler(), 400, Color.WHITE, 10 * Chunk.GRID_SIZE, x, y);
+        pointLight = world.addPointLight(400, Color.WHITE, 10 * Chunk.GRID_SIZE, x, y);
     }
 
     @Override
@@ -132,6 +137,8 @@ public class TestScreen extends GuiScreen {
             text = block.toString();
         } else if(tile != null) {
             text = tile.toString();
+        } else if(world.getChunkState(tilePos.getX(), tilePos.getY()) == ChunkState.PENDING) {
+            text = "Loading chunk...";
         }
 
         if (text != null) {
@@ -177,25 +184,8 @@ public class TestScreen extends GuiScreen {
         }
 
         if(Gdx.input.isKeyJustPressed(Input.Keys.L)) {
-            int x = tilePos.getX();
-            int y = tilePos.getY();
-
-            for(int i = -5; i < 5; i++) {
-                for(int j = -5; j < 5; j++) {
-                    int x1 = x + i;
-                    int y1 = y + j;
-
-                    double d = Math.sqrt(Math.pow((x - x1), 2) + Math.pow((y - y1), 2));
-
-                    if(d <= 4) {
-                        if(Gdx.input.isKeyPressed(Input.Keys.SHIFT_LEFT)) {
-                            world.removeTile(x1, y1);
-                        } else {
-                            world.setTile(TileType.ROCKY_FLOOR, x1, y1);
-                        }
-                    }
-                }
-            }
+            TileType type = Gdx.input.isKeyPressed(Input.Keys.SHIFT_LEFT) ? null : TileType.ROCKY_FLOOR;
+            world.fillCircle(type, tilePos.getX(), tilePos.getY(), 4);
         }
 
         if(Gdx.input.isKeyPressed(Input.Keys.G) && Gdx.input.justTouched()) {
@@ -205,7 +195,7 @@ public class TestScreen extends GuiScreen {
         if(Hamlet.get().isDebugEnabled()) {
             Hamlet.get().renderUi(() -> {
                 Vector3 screenCoords = new Vector3(Hamlet.WINDOW_SIZE.x / 2, Hamlet.WINDOW_SIZE.y - 15, 0);
-                String debugText = "Hamlet: The Game\n<" + Gdx.graphics.getFramesPerSecond() + " fps, " + Gdx.graphics.getGLVersion().getRendererString() + " OpenGL " + Gdx.graphics.getGLVersion().getMajorVersion() + "." + Gdx.graphics.getGLVersion().getMinorVersion() + " with " + Gdx.graphics.getType().name() + (Hamlet.get().isFpsCapped() ? " ! vSync !" : "") + ">";
+                String debugText = "Hamlet: The Game\n<" + Gdx.graphics.getFramesPerSecond() + " fps, " + Gdx.graphics.getGLVersion().getRendererString() + " OpenGL " + Gdx.graphics.getGLVersion().getMajorVersion() + "." + Gdx.graphics.getGLVersion().getMinorVersion() + " with " + Gdx.graphics.getType().name() + (Hamlet.get().isFpsCapped() ? " ! vSync !" : "") + ">\n" + Hamlet.get().getLastFrameDrawCalls() + " draw calls, " + Hamlet.get().getLastFrameTextureBindings() + " texture binds\nLighting: " + world.getLightingGovernor();
                 Vector2 size = textRenderer.getPixelSize("pixel", 30, true, (int) Hamlet.WINDOW_SIZE.x, FontStyle.REGULAR, debugText);
                 npd.draw(spriteBatch, screenCoords.x - size.x / 2 - 10, screenCoords.y - size.y - 10, size.x + 20, size.y + 20);
                 textRenderer.drawWrappedText("pixel", 30, (int) size.x, FontStyle.REGULAR, Anchor.CENTRE, Anchor.TOP, Align.center, Color.WHITE, screenCoords.x, screenCoords.y, debugText);
@@ -221,4 +211,11 @@ public class TestScreen extends GuiScreen {
             world.unloadAllChunks();
         }
     }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+
+        world.dispose();
+    }
 }
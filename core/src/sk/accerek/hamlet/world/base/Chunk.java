@@ -1,152 +1,263 @@
 package sk.accerek.hamlet.world.base;
 
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.badlogic.gdx.math.Vector3;
 import lombok.Getter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import sk.accerek.hamlet.Hamlet;
 import sk.accerek.hamlet.world.block.Block;
 import sk.accerek.hamlet.world.block.BlockType;
+import sk.accerek.hamlet.world.render.ViewBounds;
 import sk.accerek.hamlet.world.tile.Tile;
 import sk.accerek.hamlet.world.tile.TileType;
 
-import java.lang.reflect.Array;
-
 public class Chunk {
     public static final int BIT_SIZE = 4;
     public static final int CHUNK_SIZE = (int) Math.pow(BIT_SIZE, 2);
     public static final int GRID_SIZE = 64;
     public static final int CHUNK_PIXEL_SIZE = CHUNK_SIZE * GRID_SIZE;
+    // Tile and block variants are saved as 4 bits each
+    public static final int MAX_VARIANTS = 16;
+
+    private static final int ESTIMATED_BASE_SIZE = 2560;
+    private static final int ESTIMATED_BLOCK_SIZE = 128;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final @Getter int chunkX;
+    private final @Getter int chunkY;
+    private final @Getter long key;
+    private final @Getter long seed;
+
+    /**
+     * Tile type ids + 1 (0 is an empty cell), indexed by {@link #index(int, int)}.
+     */
+    private final @Getter short[] tileTypeIds;
+    private final @Getter byte[] tileVariants;
+    private @Getter Block[][] blocks;
 
-    private final Logger logger;
-    private final @Getter Pair<Integer, Integer> chunkPosition;
+    // Everything changing the chunk synchronizes on it, as saving encodes it while holding its monitor
+    private volatile @Getter int modificationCount = 0;
+    private volatile @Getter int tileVersion = 0;
+    private volatile int savedModificationCount = 0;
 
-    private @Getter Tile[][] tiles;
-    private @Getter Block[][] blocks;
+    private int blockCount = 0;
+
+    private final Block[] drawList = new Block[CHUNK_SIZE * CHUNK_SIZE];
+    // Index of the first block of each row in the draw list, counting rows from the top, followed by blockCount
+    private final int[] rowStarts = new int[CHUNK_SIZE + 1];
+    private @Getter long lastAccessed = 0;
 
     public Chunk(Pair<Integer, Integer> chunkPosition) {
-        this.logger = LoggerFactory.getLogger("Chunk" + chunkPosition);
-        this.chunkPosition = chunkPosition;
-        this.tiles = new Tile[CHUNK_SIZE][CHUNK_SIZE];
-        this.blocks = new Block[CHUNK_SIZE][CHUNK_SIZE];
+        this(chunkPosition.getX(), chunkPosition.getY());
     }
 
-    public void render(SpriteBatch spriteBatch) {
-        for(Tile[] row : tiles) {
-            if(row == null) {
-                continue;
-            }
-
-            for(Tile tile : row) {
-                if(tile == null) {
-                    continue;
-                }
+    public Chunk(int chunkX, int chunkY) {
+        this(chunkX, chunkY, 0);
+    }
 
-                if(!isPositionInView(tile.getPixelPosition())) {
-                    continue;
-                }
+    /**
+     * @param seed the world's seed, which tile and block variants are picked with
+     */
+    public Chunk(int chunkX, int chunkY, long seed) {
+        this.chunkX = chunkX;
+        this.chunkY = chunkY;
+        this.seed = seed;
+        this.key = ChunkKey.pack(chunkX, chunkY);
+        this.tileTypeIds = new short[CHUNK_SIZE * CHUNK_SIZE];
+        this.tileVariants = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        this.blocks = new Block[CHUNK_SIZE][CHUNK_SIZE];
+    }
 
-                tile.render(spriteBatch);
-            }
+    /**
+     * Draws the blocks of a single row which lie within the view, left to right. Tiles are drawn separately,
+     * through the world's {@link sk.accerek.hamlet.world.render.TileLayerCache}. The world draws the same row of
+     * every visible chunk before moving on to the row below, so tall blocks overlap correctly across chunk borders.
+     */
+    public void renderRow(SpriteBatch spriteBatch, int yInChunk, ViewBounds viewBounds) {
+        int row = CHUNK_SIZE - 1 - yInChunk;
+        int end = rowStarts[row + 1];
+        if(rowStarts[row] == end) {
+            return;
         }
 
-        for(int i = blocks.length - 1; i >= 0; i--) {
-            Block[] row = getRow(blocks, i, Block[].class);
-            if(row == null) {
-                continue;
-            }
+        int originX = chunkX << BIT_SIZE;
+        int minX = viewBounds.getMinTileX() - originX;
+        int maxX = viewBounds.getMaxTileX() - originX;
 
-            for(Block block : row) {
-                if(block == null) {
-                    continue;
-                }
-
-                if(!isPositionInView(block.getPixelPosition())) {
-                    continue;
-                }
+        for(int i = rowStarts[row]; i < end; i++) {
+            Block block = drawList[i];
+            if(block.getXInChunk() > maxX) {
+                break;
+            }
 
+            if(block.getXInChunk() >= minX) {
                 block.render(spriteBatch);
             }
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private <T> T[] getRow(T[][] array, int num, Class<T[]> clazz) {
-        if(array.length == 0) {
-            return (T[]) new Object[0];
-        }
-        T[] row = (T[]) Array.newInstance(clazz.getComponentType(), array[0].length);
-
-        for(int i = 0; i < array.length; i++) {
-            for(int j = 0; j < array[i].length; j++) {
-                if(j == num) {
-                    row[i] = array[i][j];
-                    break;
-                }
-            }
-        }
-
-        return row;
+    public Pair<Integer, Integer> getChunkPosition() {
+        return new Pair<>(chunkX, chunkY);
     }
 
-    private Vector3 projectCoordinates(Pair<Integer, Integer> pixelPosition) {
-        return Hamlet.get().getCamera().project(new Vector3(pixelPosition.getX(), pixelPosition.getY(), 0));
+    public static int index(int xInChunk, int yInChunk) {
+        return (xInChunk << BIT_SIZE) | yInChunk;
     }
 
-    private boolean isInView(Vector3 screenCoordinates) {
-        return !(screenCoordinates.x + GRID_SIZE * 2 < 0 || screenCoordinates.x > Hamlet.VIEW_SIZE.x || screenCoordinates.y + GRID_SIZE * 2 < 0 || screenCoordinates.y > Hamlet.VIEW_SIZE.y);
+    /**
+     * The coordinate of the chunk holding the given tile coordinate, rounding towards negative infinity.
+     */
+    public static int toChunkCoordinate(int tileCoordinate) {
+        return tileCoordinate >> BIT_SIZE;
     }
 
-    private boolean isPositionInView(Pair<Integer, Integer> position) {
-        return isInView(projectCoordinates(position));
+    /**
+     * The tile coordinate relative to the chunk holding it, always within {@code [0, CHUNK_SIZE)}.
+     */
+    public static int toLocalCoordinate(int tileCoordinate) {
+        return tileCoordinate & (CHUNK_SIZE - 1);
     }
 
-    public void setTile(TileType type, int xInChunk, int yInChunk) {
+    public synchronized void setTile(TileType type, int xInChunk, int yInChunk) {
         if(xInChunk >= CHUNK_SIZE || yInChunk >= CHUNK_SIZE || xInChunk < 0 || yInChunk < 0) {
             return;
         }
 
-        Tile tile = new Tile(type, this, new Pair<>(xInChunk, yInChunk));
+        int index = index(xInChunk, yInChunk);
 
-        tiles[xInChunk][yInChunk] = tile;
+        tileTypeIds[index] = (short) (type.getId() + 1);
+        tileVariants[index] = pickVariant(type, xInChunk, yInChunk);
+        tileVersion++;
+        modificationCount++;
     }
 
-    public Tile getTile(int xInChunk, int yInChunk) {
+    public TileType getTileType(int xInChunk, int yInChunk) {
         if(xInChunk >= CHUNK_SIZE || yInChunk >= CHUNK_SIZE || xInChunk < 0 || yInChunk < 0) {
             return null;
         }
 
-        return tiles[xInChunk][yInChunk];
+        return TileType.getById(tileTypeIds[index(xInChunk, yInChunk)] - 1);
     }
 
-    public void removeTile(int xInChunk, int yInChunk) {
+    public Tile getTile(int xInChunk, int yInChunk) {
+        TileType type = getTileType(xInChunk, yInChunk);
+        if(type == null) {
+            return null;
+        }
+
+        return new Tile(type, this, xInChunk, yInChunk, tileVariants[index(xInChunk, yInChunk)]);
+    }
+
+    public synchronized void removeTile(int xInChunk, int yInChunk) {
         if(xInChunk >= CHUNK_SIZE || yInChunk >= CHUNK_SIZE || xInChunk < 0 || yInChunk < 0) {
             return;
         }
 
-        tiles[xInChunk][yInChunk] = null;
+        tileTypeIds[index(xInChunk, yInChunk)] = 0;
+        tileVariants[index(xInChunk, yInChunk)] = 0;
+        tileVersion++;
+        modificationCount++;
+    }
+
+    /**
+     * Sets every tile of the local rectangle accepted by the filter (or all of them, if it's null) to the given
+     * type, or clears them if the type is null. The whole fill counts as a single change to the chunk.
+     *
+     * @return the number of tiles changed
+     */
+    public synchronized int fillTiles(TileType type, int minX, int minY, int maxX, int maxY, TileFilter filter) {
+        minX = Math.max(0, minX);
+        minY = Math.max(0, minY);
+        maxX = Math.min(CHUNK_SIZE - 1, maxX);
+        maxY = Math.min(CHUNK_SIZE - 1, maxY);
+
+        short typeId = (short) (type == null ? 0 : type.getId() + 1);
+        int originX = chunkX << BIT_SIZE;
+        int originY = chunkY << BIT_SIZE;
+
+        int changed = 0;
+        for(int x = minX; x <= maxX; x++) {
+            for(int y = minY; y <= maxY; y++) {
+                int index = index(x, y);
+                if(filter != null && !filter.test(originX + x, originY + y, TileType.getById(tileTypeIds[index] - 1))) {
+                    continue;
+                }
+
+                tileTypeIds[index] = typeId;
+                tileVariants[index] = type == null ? 0 : pickVariant(type, x, y);
+                changed++;
+            }
+        }
+
+        if(changed > 0) {
+            tileVersion++;
+            modificationCount++;
+        }
+
+        return changed;
     }
 
-    public Block setBlock(BlockType blockType, int xInChunk, int yInChunk) {
+    /**
+     * Copies tiles into the local rectangle from arrays laid out like this chunk's own, {@code sourceHeight} tiles
+     * per column, starting at the given source position. The whole copy counts as a single change to the chunk.
+     */
+    public synchronized void pasteTiles(int minX, int minY, int maxX, int maxY, short[] sourceTypeIds, byte[] sourceVariants, int sourceX, int sourceY, int sourceHeight) {
+        for(int x = minX; x <= maxX; x++) {
+            int sourceIndex = (sourceX + x - minX) * sourceHeight + sourceY;
+            int height = maxY - minY + 1;
+
+            System.arraycopy(sourceTypeIds, sourceIndex, tileTypeIds, index(x, minY), height);
+            System.arraycopy(sourceVariants, sourceIndex, tileVariants, index(x, minY), height);
+        }
+
+        tileVersion++;
+        modificationCount++;
+    }
+
+    public synchronized Block setBlock(BlockType blockType, int xInChunk, int yInChunk) {
+        Block block = placeBlock(blockType, xInChunk, yInChunk);
+        if(block != null) {
+            block.create();
+        }
+
+        return block;
+    }
+
+    /**
+     * Places a block loaded from a saved chunk, with the variant it was created with instead of creating it anew.
+     */
+    public synchronized Block restoreBlock(BlockType blockType, int xInChunk, int yInChunk, int variant) {
+        Block block = placeBlock(blockType, xInChunk, yInChunk);
+        if(block != null) {
+            block.restore(variant);
+        }
+
+        return block;
+    }
+
+    private Block placeBlock(BlockType blockType, int xInChunk, int yInChunk) {
         if(xInChunk >= CHUNK_SIZE || yInChunk >= CHUNK_SIZE || xInChunk < 0 || yInChunk < 0) {
             return null;
         }
 
-
         Block block;
 
         try {
-            block = blockType.getClazz().getConstructor().newInstance();
+            block = blockType.newBlock();
         } catch (Exception e) {
-            logger.error("Failed to instantiate Block!" + e);
+            logger.error("Failed to instantiate a block in the chunk at {}, {}!", chunkX, chunkY, e);
             return null;
         }
 
         block.setChunk(this);
-        block.setPositionInChunk(new Pair<>(xInChunk, yInChunk));
-        block.create();
+        block.setPositionInChunk(xInChunk, yInChunk);
+        Block previous = blocks[xInChunk][yInChunk];
+        if(previous == null) {
+            insertIntoDrawList(block);
+        } else {
+            drawList[drawListIndexOf(previous)] = block;
+        }
         blocks[xInChunk][yInChunk] = block;
+        modificationCount++;
 
         return block;
     }
@@ -159,11 +270,91 @@ public class Chunk {
         return blocks[xInChunk][yInChunk];
     }
 
-    public void removeBlock(int xInChunk, int yInChunk) {
+    public synchronized void removeBlock(int xInChunk, int yInChunk) {
         if(xInChunk >= CHUNK_SIZE || yInChunk >= CHUNK_SIZE || xInChunk < 0 || yInChunk < 0) {
             return;
         }
 
+        if(blocks[xInChunk][yInChunk] != null) {
+            removeFromDrawList(blocks[xInChunk][yInChunk]);
+        }
         blocks[xInChunk][yInChunk] = null;
+        modificationCount++;
+    }
+
+    /**
+     * A value from 0 to {@code bound} that's always the same for the given position in this world, so re-placing
+     * a tile or block doesn't change its looks.
+     */
+    public int pick(int xInChunk, int yInChunk, int salt, int bound) {
+        return PositionalHash.pick(seed, (chunkX << BIT_SIZE) + xInChunk, (chunkY << BIT_SIZE) + yInChunk, salt, bound);
+    }
+
+    private byte pickVariant(TileType type, int xInChunk, int yInChunk) {
+        int variantCount = type.getVariantCount();
+        return (byte) (variantCount > 1 ? pick(xInChunk, yInChunk, type.getId(), variantCount) : 0);
+    }
+
+    private void insertIntoDrawList(Block block) {
+        int row = CHUNK_SIZE - 1 - block.getYInChunk();
+
+        int index = rowStarts[row];
+        while(index < rowStarts[row + 1] && drawList[index].getXInChunk() < block.getXInChunk()) {
+            index++;
+        }
+
+        System.arraycopy(drawList, index, drawList, index + 1, blockCount - index);
+        drawList[index] = block;
+        blockCount++;
+
+        for(int i = row + 1; i <= CHUNK_SIZE; i++) {
+            rowStarts[i]++;
+        }
+    }
+
+    private void removeFromDrawList(Block block) {
+        int row = CHUNK_SIZE - 1 - block.getYInChunk();
+        int index = drawListIndexOf(block);
+
+        System.arraycopy(drawList, index + 1, drawList, index, blockCount - index - 1);
+        blockCount--;
+        drawList[blockCount] = null;
+
+        for(int i = row + 1; i <= CHUNK_SIZE; i++) {
+            rowStarts[i]--;
+        }
+    }
+
+    private int drawListIndexOf(Block block) {
+        int row = CHUNK_SIZE - 1 - block.getYInChunk();
+        for(int i = rowStarts[row]; i < rowStarts[row + 1]; i++) {
+            if(drawList[i] == block) {
+                return i;
+            }
+        }
+
+        throw new IllegalStateException(block + " isn't in the draw list of the chunk at " + chunkX + ", " + chunkY);
+    }
+
+    public void touch(long time) {
+        this.lastAccessed = time;
+    }
+
+    /**
+     * A rough guess of the heap this chunk keeps alive, used for the world's memory budget.
+     */
+    public long getEstimatedSize() {
+        return ESTIMATED_BASE_SIZE + (long) blockCount * ESTIMATED_BLOCK_SIZE;
+    }
+
+    public boolean isDirty() {
+        return modificationCount != savedModificationCount;
+    }
+
+    /**
+     * Records that the chunk's state as of {@code modificationCount} is what's stored on disk.
+     */
+    public void markSaved(int modificationCount) {
+        this.savedModificationCount = modificationCount;
     }
 }
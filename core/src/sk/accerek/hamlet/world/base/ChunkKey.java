@@ -0,0 +1,21 @@
+package sk.accerek.hamlet.world.base;
+
+public final class ChunkKey {
+    private ChunkKey() { }
+
+    public static long pack(int chunkX, int chunkY) {
+        return ((long) chunkX << 32) | (chunkY & 0xFFFFFFFFL);
+    }
+
+    public static int getX(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int getY(long key) {
+        return (int) key;
+    }
+
+    public static long of(Pair<Integer, Integer> chunkPosition) {
+        return pack(chunkPosition.getX(), chunkPosition.getY());
+    }
+}
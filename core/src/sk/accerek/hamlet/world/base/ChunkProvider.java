@@ -1,8 +1,35 @@
 package sk.accerek.hamlet.world.base;
 
+import java.io.IOException;
 import java.util.Optional;
 
 public interface ChunkProvider {
     Optional<Chunk> provide(int x, int y);
-    void unload(Chunk chunk);
+
+    /**
+     * Saves the chunk, if the provider keeps chunks at all.
+     *
+     * @throws IOException if the chunk couldn't be saved, in which case it's still only in memory
+     */
+    void unload(Chunk chunk) throws IOException;
+
+    /**
+     * Whether the provider has the chunk itself, rather than handing out an empty one for it. Storage answers
+     * this without reading the chunk, so it's cheap enough to ask before every load.
+     */
+    default boolean exists(int x, int y) {
+        return true;
+    }
+
+    /**
+     * Whether {@link #unload(Chunk)} can keep changes at all. Changed chunks of a provider that can't are never
+     * unloaded, since that would throw the changes away.
+     */
+    default boolean isWritable() {
+        return true;
+    }
+
+    default void dispose() {
+
+    }
 }
@@ -0,0 +1,147 @@
+package sk.accerek.hamlet.world.base;
+
+import com.badlogic.gdx.utils.LongMap;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Loaded chunks, indexed by their packed {@link ChunkKey} for constant-time lookups and bucketed into a uniform
+ * grid of {@value #SECTOR_SIZE}x{@value #SECTOR_SIZE} chunk sectors for rectangle queries. Adding or removing a
+ * chunk only touches its own sector, and a query only visits the sectors overlapping the rectangle, so its cost
+ * depends on the size of the rectangle and not on how many chunks are loaded.
+ * <p>
+ * Not thread-safe on its own: callers synchronize on the registry, just like they used to on the chunk list.
+ */
+public class ChunkRegistry implements Iterable<Chunk> {
+    private static final int SECTOR_BITS = 3;
+    private static final int SECTOR_SIZE = 1 << SECTOR_BITS;
+    private static final int SECTOR_MASK = SECTOR_SIZE - 1;
+
+    private final LongMap<Chunk> chunksByKey = new LongMap<>();
+    private final LongMap<Sector> sectors = new LongMap<>();
+
+    public Chunk get(int chunkX, int chunkY) {
+        return chunksByKey.get(ChunkKey.pack(chunkX, chunkY));
+    }
+
+    public Chunk get(long key) {
+        return chunksByKey.get(key);
+    }
+
+    public boolean contains(int chunkX, int chunkY) {
+        return chunksByKey.containsKey(ChunkKey.pack(chunkX, chunkY));
+    }
+
+    public boolean contains(long key) {
+        return chunksByKey.containsKey(key);
+    }
+
+    /**
+     * @return the chunk previously registered at the same position, if any
+     */
+    public Chunk add(Chunk chunk) {
+        Chunk previous = chunksByKey.put(chunk.getKey(), chunk);
+
+        long sectorKey = ChunkKey.pack(chunk.getChunkX() >> SECTOR_BITS, chunk.getChunkY() >> SECTOR_BITS);
+        Sector sector = sectors.get(sectorKey);
+        if(sector == null) {
+            sector = new Sector();
+            sectors.put(sectorKey, sector);
+        }
+
+        sector.set(chunk.getChunkX(), chunk.getChunkY(), chunk);
+
+        return previous;
+    }
+
+    public Chunk remove(long key) {
+        Chunk chunk = chunksByKey.remove(key);
+        if(chunk == null) {
+            return null;
+        }
+
+        long sectorKey = ChunkKey.pack(chunk.getChunkX() >> SECTOR_BITS, chunk.getChunkY() >> SECTOR_BITS);
+        Sector sector = sectors.get(sectorKey);
+        sector.set(chunk.getChunkX(), chunk.getChunkY(), null);
+        if(sector.count == 0) {
+            sectors.remove(sectorKey);
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Adds the loaded chunks inside the rectangle (inclusive, in chunk coordinates) to {@code out}, in draw order:
+     * top row first, left to right within a row.
+     *
+     * @return the number of chunks added
+     */
+    public int query(int minChunkX, int minChunkY, int maxChunkX, int maxChunkY, List<Chunk> out) {
+        int added = 0;
+
+        for(int chunkY = maxChunkY; chunkY >= minChunkY; chunkY--) {
+            int sectorY = chunkY >> SECTOR_BITS;
+
+            for(int sectorX = minChunkX >> SECTOR_BITS; sectorX <= maxChunkX >> SECTOR_BITS; sectorX++) {
+                Sector sector = sectors.get(ChunkKey.pack(sectorX, sectorY));
+                if(sector == null) {
+                    continue;
+                }
+
+                int fromX = Math.max(minChunkX, sectorX << SECTOR_BITS);
+                int toX = Math.min(maxChunkX, (sectorX << SECTOR_BITS) + SECTOR_MASK);
+                for(int chunkX = fromX; chunkX <= toX; chunkX++) {
+                    Chunk chunk = sector.get(chunkX, chunkY);
+                    if(chunk != null) {
+                        out.add(chunk);
+                        added++;
+                    }
+                }
+            }
+        }
+
+        return added;
+    }
+
+    public void clear() {
+        chunksByKey.clear();
+        sectors.clear();
+    }
+
+    public int size() {
+        return chunksByKey.size;
+    }
+
+    public int getSectorCount() {
+        return sectors.size;
+    }
+
+    /**
+     * Iterates over all loaded chunks, in no particular order.
+     */
+    @Override
+    public Iterator<Chunk> iterator() {
+        return new LongMap.Values<>(chunksByKey);
+    }
+
+    private static class Sector {
+        private final Chunk[] chunks = new Chunk[SECTOR_SIZE * SECTOR_SIZE];
+        private int count = 0;
+
+        private Chunk get(int chunkX, int chunkY) {
+            return chunks[((chunkX & SECTOR_MASK) << SECTOR_BITS) | (chunkY & SECTOR_MASK)];
+        }
+
+        private void set(int chunkX, int chunkY, Chunk chunk) {
+            int index = ((chunkX & SECTOR_MASK) << SECTOR_BITS) | (chunkY & SECTOR_MASK);
+            if(chunks[index] == null && chunk != null) {
+                count++;
+            } else if(chunks[index] != null && chunk == null) {
+                count--;
+            }
+
+            chunks[index] = chunk;
+        }
+    }
+}
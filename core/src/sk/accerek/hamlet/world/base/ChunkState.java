@@ -0,0 +1,5 @@
+package sk.accerek.hamlet.world.base;
+
+public enum ChunkState {
+    LOADED, PENDING, UNLOADED
+}
@@ -0,0 +1,29 @@
+package sk.accerek.hamlet.world.base;
+
+/**
+ * Stateless pseudo-random numbers keyed by world position, for choices like texture variants which have to come
+ * out the same every time a tile or block at that position is placed, without keeping a {@link java.util.Random}
+ * around. The salt tells apart different choices made at the same position.
+ */
+public final class PositionalHash {
+    private PositionalHash() { }
+
+    public static int hash(long seed, int x, int y, int salt) {
+        long hash = seed;
+        hash ^= x * 0x9E3779B97F4A7C15L;
+        hash ^= y * 0xC2B2AE3D27D4EB4FL;
+        hash ^= salt * 0x165667B19E3779F9L;
+
+        // The finaliser of MurmurHash3, so neighbouring positions end up with unrelated values
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return (int) (hash ^ (hash >>> 33));
+    }
+
+    /**
+     * @return a number from 0 (inclusive) to {@code bound} (exclusive)
+     */
+    public static int pick(long seed, int x, int y, int salt, int bound) {
+        return (int) (((hash(seed, x, y, salt) & 0xFFFFFFFFL) * bound) >>> 32);
+    }
+}
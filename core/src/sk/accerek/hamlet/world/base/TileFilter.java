@@ -0,0 +1,12 @@
+package sk.accerek.hamlet.world.base;
+
+import sk.accerek.hamlet.world.tile.TileType;
+
+/**
+ * Picks which tiles of a region a bulk edit applies to, given their world position and current type (null for
+ * empty tiles).
+ */
+@FunctionalInterface
+public interface TileFilter {
+    boolean test(int x, int y, TileType current);
+}
@@ -1,19 +1,30 @@
 package sk.accerek.hamlet.world.base;
 
+import box2dLight.Light;
+import box2dLight.PointLight;
 import box2dLight.RayHandler;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.math.Vector3;
-import com.badlogic.gdx.physics.box2d.Body;
-import com.badlogic.gdx.physics.box2d.BodyDef;
 import com.badlogic.gdx.physics.box2d.Box2DDebugRenderer;
-import com.badlogic.gdx.physics.box2d.FixtureDef;
 import lombok.Getter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sk.accerek.hamlet.Hamlet;
 import sk.accerek.hamlet.world.block.Block;
 import sk.accerek.hamlet.world.block.BlockType;
+import sk.accerek.hamlet.world.lighting.AdaptivePointLight;
+import sk.accerek.hamlet.world.lighting.LightingGovernor;
+import sk.accerek.hamlet.world.lighting.StaticLighting;
+import sk.accerek.hamlet.world.physics.ChunkColliders;
+import sk.accerek.hamlet.world.render.TileLayerCache;
+import sk.accerek.hamlet.world.render.ViewBounds;
+import sk.accerek.hamlet.world.simulation.Simulation;
+import sk.accerek.hamlet.world.streaming.ChunkStreamer;
+import sk.accerek.hamlet.world.streaming.ChunkWriter;
 import sk.accerek.hamlet.world.tile.Tile;
 import sk.accerek.hamlet.world.tile.TileType;
 
@@ -23,326 +34,695 @@ import java.util.List;
 import java.util.Optional;
 
 public class World {
+    // How many tiles below and left of the view blocks are still drawn from, as their sprites can reach into it
+    private static final int BLOCK_OVERDRAW = 2;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private final ChunkProvider chunkProvider;
 
-    private final List<Chunk> loadedChunks;
+    private final ChunkRegistry loadedChunks;
+    private final ChunkStreamer chunkStreamer;
+    private final ChunkWriter chunkWriter;
+    private final @Getter WorldSettings settings;
 
-    private final com.badlogic.gdx.physics.box2d.World box2dWorld;
+    private final @Getter com.badlogic.gdx.physics.box2d.World box2dWorld;
+    private final @Getter ChunkColliders chunkColliders;
+    private final @Getter Simulation simulation;
     private final Box2DDebugRenderer dDebugRenderer;
+    private final TileLayerCache tileLayerCache;
     private final @Getter RayHandler rayHandler;
+    private final @Getter StaticLighting staticLighting;
+    private final @Getter LightingGovernor lightingGovernor;
 
     private final Hamlet hamlet = Hamlet.get();
 
+    private long frame = 0;
+    private int focusX = 0;
+    private int focusY = 0;
+    private long lastEvictionFocus = Long.MIN_VALUE;
+    private int lastEvictionSize = -1;
+    private final List<Chunk> evictionCandidates = new ArrayList<>();
+    private final List<Chunk> visibleChunks = new ArrayList<>();
+    private final ViewBounds viewBounds = new ViewBounds();
+    private final Tile tileView = new Tile(null, null, 0, 0, 0);
+
     public World(ChunkProvider chunkProvider) {
+        this(chunkProvider, WorldSettings.defaults());
+    }
+
+    public World(ChunkProvider chunkProvider, WorldSettings settings) {
         RayHandler.useDiffuseLight(true);
         RayHandler.setGammaCorrection(true);
 
         this.chunkProvider = chunkProvider;
+        this.settings = settings;
 
-        this.loadedChunks = new ArrayList<>();
+        this.loadedChunks = new ChunkRegistry();
+        this.chunkStreamer = new ChunkStreamer(chunkProvider, settings.getStreamingThreads());
+        this.chunkWriter = new ChunkWriter(chunkProvider, settings.getWriterThreads(), settings.getWriterQueueSize());
 
         this.box2dWorld = new com.badlogic.gdx.physics.box2d.World(new Vector2(0, 0), true);
 
+        this.chunkColliders = new ChunkColliders(box2dWorld, loadedChunks);
+        this.simulation = new Simulation(box2dWorld, settings.getTickRate(), settings.getMaxStepsPerFrame(), settings.isInterpolatePhysics(), settings.isSimulationThread());
         this.rayHandler = new RayHandler(box2dWorld);
+        this.staticLighting = new StaticLighting(box2dWorld, chunkColliders, settings.getLightmapResolution(), settings.getLightBakesPerFrame());
 
         float intensity = .35f;
         setAmbientLight(intensity, intensity, intensity, intensity);
-        this.rayHandler.setBlur(true);
-        this.rayHandler.setBlurNum(5);
         this.rayHandler.setShadows(true);
         this.rayHandler.setCulling(true);
+        // The light map is blended over the scene by the static lighting, once the baked lights are added to it
+        this.rayHandler.setLightMapRendering(false);
+        this.staticLighting.setBlur(true, settings.getMaxBlurPasses());
+        this.staticLighting.setShadows(true);
+
+        this.lightingGovernor = new LightingGovernor(rayHandler, settings.getTargetFrameTime(),
+                settings.getMinBlurPasses(), settings.getMaxBlurPasses(),
+                settings.getMinLightMapDivisor(), settings.getMaxLightMapDivisor(),
+                settings.getMinRayScale(), settings.getLightingUpgradeDelay());
+        this.lightingGovernor.setEnabled(settings.isAdaptiveLighting());
+
+        this.chunkColliders.setChangeListener(chunk -> staticLighting.invalidate(chunk.getChunkX(), chunk.getChunkY()));
 
         this.dDebugRenderer = new Box2DDebugRenderer();
+        this.tileLayerCache = new TileLayerCache(settings.getTileCachePages(), hamlet.getTextureProvider().getBackupTexture());
     }
 
     public boolean loadChunk(Pair<Integer, Integer> chunkPosition) {
-        Optional<Chunk> optionalChunk = chunkProvider.provide(chunkPosition.getX(), chunkPosition.getY());
+        return loadChunk(chunkPosition.getX(), chunkPosition.getY());
+    }
+
+    /**
+     * Loads the chunk right away on the calling thread, reading or generating it through the provider. Unlike
+     * the chunks streamed in around the camera, this blocks the frame for as long as the provider takes.
+     */
+    public boolean loadChunk(int chunkX, int chunkY) {
+        long key = ChunkKey.pack(chunkX, chunkY);
+        chunkStreamer.cancel(key);
+        chunkWriter.awaitSave(key);
+
+        Optional<Chunk> optionalChunk = Optional.ofNullable(chunkWriter.getPending(key));
+        if(!optionalChunk.isPresent()) {
+            optionalChunk = chunkProvider.provide(chunkX, chunkY);
+        }
+
         if(!optionalChunk.isPresent()) {
             return false;
         }
 
         synchronized (loadedChunks) {
+            optionalChunk.get().touch(frame);
             loadedChunks.add(optionalChunk.get());
-            loadedChunks.sort(new ChunkComparator());
         }
 
-        logger.debug("Loaded chunk at {}!", chunkPosition);
+        chunkColliders.markDirty(optionalChunk.get());
+
+        logger.debug("Loaded chunk at {}, {}!", chunkX, chunkY);
 
         return true;
     }
 
     public boolean unloadChunk(Pair<Integer, Integer> chunkPosition) {
-        if(!isChunkLoaded(chunkPosition)) {
-            logger.warn("Chunk at {} is already unloaded!", chunkPosition);
+        return unloadChunk(chunkPosition.getX(), chunkPosition.getY());
+    }
+
+    public boolean unloadChunk(int chunkX, int chunkY) {
+        Chunk chunk;
+        synchronized (loadedChunks) {
+            chunk = loadedChunks.get(chunkX, chunkY);
+        }
+
+        if(chunk == null) {
+            logger.warn("Chunk at {}, {} is already unloaded!", chunkX, chunkY);
             return false;
         }
 
+        unloadChunk(chunk);
+
+        return true;
+    }
+
+    private void unloadChunk(Chunk chunk) {
         synchronized (loadedChunks) {
-            Chunk chunk = null;
-            for(Chunk chunk0 : loadedChunks) {
-                if(chunk0.getChunkPosition().equals(chunkPosition)) {
-                    chunk = chunk0;
-                    break;
-                }
-            }
-            if(chunk == null) {
-                logger.error("Failed to unload chunk at {}: no chunk found at given position", chunkPosition);
-                return false;
-            }
+            loadedChunks.remove(chunk.getKey());
+        }
+
+        tileLayerCache.release(chunk);
+        staticLighting.release(chunk);
+        synchronized (simulation.getLock()) {
+            chunkColliders.remove(chunk);
+        }
 
-            chunkProvider.unload(chunk);
-            loadedChunks.remove(chunk);
-            loadedChunks.sort(new ChunkComparator());
+        chunkWriter.write(chunk);
+    }
 
-            return true;
+    public ChunkState getChunkState(int x, int y) {
+        long key = ChunkKey.pack(Chunk.toChunkCoordinate(x), Chunk.toChunkCoordinate(y));
+
+        synchronized (loadedChunks) {
+            if(loadedChunks.contains(key)) {
+                return ChunkState.LOADED;
+            }
         }
+
+        return chunkStreamer.isPending(key) ? ChunkState.PENDING : ChunkState.UNLOADED;
     }
 
     public boolean unloadAllChunks() {
+        List<Chunk> chunks = new ArrayList<>(loadedChunks.size());
         synchronized (loadedChunks) {
             for(Chunk chunk : loadedChunks) {
-                chunkProvider.unload(chunk);
+                chunks.add(chunk);
             }
 
             loadedChunks.clear();
         }
 
+        int discarded = 0;
+        for(Chunk chunk : chunks) {
+            tileLayerCache.release(chunk);
+            staticLighting.release(chunk);
+            synchronized (simulation.getLock()) {
+                chunkColliders.remove(chunk);
+            }
+
+            if(!chunkWriter.write(chunk) && chunk.isDirty()) {
+                discarded++;
+            }
+        }
+
+        if(discarded > 0) {
+            logger.warn("Discarded the changes of {} chunks, the world can't be saved", discarded);
+        }
+
         return true;
     }
 
-    private boolean isChunkLoaded(Pair<Integer, Integer> chunkPosition) {
+    /**
+     * Saves every modified chunk, loaded or still queued for saving, and blocks until they're all on disk.
+     */
+    public void flush() {
         synchronized (loadedChunks) {
-            for (Chunk chunk : loadedChunks) {
-                if (chunk.getChunkPosition().equals(chunkPosition)) {
-                    return true;
-                }
+            for(Chunk chunk : loadedChunks) {
+                chunkWriter.write(chunk);
             }
         }
 
-        return false;
+        chunkWriter.flush();
     }
 
-    private Optional<Chunk> getChunk(Pair<Integer, Integer> chunkPosition) {
+    private Chunk getLoadedChunk(int chunkX, int chunkY) {
+        Chunk chunk;
         synchronized (loadedChunks) {
-            for (Chunk chunk : loadedChunks) {
-                if (chunk.getChunkPosition().equals(chunkPosition)) {
-                    return Optional.of(chunk);
+            chunk = loadedChunks.get(chunkX, chunkY);
+        }
+
+        if(chunk != null) {
+            chunk.touch(frame);
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Returns the chunk, loading it right away if it isn't loaded yet, or null if there's no chunk to load. The
+     * edits go through here, so editing a chunk the streamer hasn't reached yet reads it on the render thread
+     * instead of dropping the edit.
+     */
+    private Chunk getOrLoadChunk(int chunkX, int chunkY) {
+        Chunk chunk = getLoadedChunk(chunkX, chunkY);
+        if(chunk == null && loadChunk(chunkX, chunkY)) {
+            chunk = getLoadedChunk(chunkX, chunkY);
+        }
+
+        return chunk;
+    }
+
+    private void streamChunks() {
+        Vector3 cameraPosition = hamlet.getCamera().position;
+        focusX = MathUtils.floor(cameraPosition.x / Chunk.CHUNK_PIXEL_SIZE);
+        focusY = MathUtils.floor(cameraPosition.y / Chunk.CHUNK_PIXEL_SIZE);
+        int radius = settings.getLoadRadius();
+
+        chunkStreamer.setFocus(focusX, focusY, radius);
+
+        synchronized (loadedChunks) {
+            for(int dx = -radius; dx <= radius; dx++) {
+                for(int dy = -radius; dy <= radius; dy++) {
+                    if(dx * dx + dy * dy > radius * radius || loadedChunks.contains(focusX + dx, focusY + dy)) {
+                        continue;
+                    }
+
+                    requestChunk(focusX + dx, focusY + dy);
                 }
             }
         }
 
-        return Optional.empty();
+        chunkStreamer.publishCompleted(this::integrateChunk);
+
+        evictChunks(focusX, focusY);
     }
 
-    public void render(SpriteBatch spriteBatch) {
+    /**
+     * Unloads chunks outside the unload radius, then the least recently used ones until the world fits its
+     * chunk and memory budget again. Chunks inside the load radius are never evicted for the budget, as they'd
+     * just be streamed in again right away. Changed chunks stay loaded if the provider has nowhere to save them.
+     */
+    private void evictChunks(int focusX, int focusY) {
+        long focus = ChunkKey.pack(focusX, focusY);
+        if(focus == lastEvictionFocus && loadedChunks.size() == lastEvictionSize) {
+            return;
+        }
+
+        int unloadRadius = Math.max(settings.getUnloadRadius(), settings.getLoadRadius() + 1);
+        long unloadDistance = (long) unloadRadius * unloadRadius;
+        long loadDistance = (long) settings.getLoadRadius() * settings.getLoadRadius();
+
+        boolean writable = chunkProvider.isWritable();
+
+        int remainingChunks = 0;
+        long remainingBytes = 0;
+
+        evictionCandidates.clear();
         synchronized (loadedChunks) {
-            for (Chunk chunk : loadedChunks) {
-                Pair<Integer, Integer> chunkPosition = chunk.getChunkPosition();
-                Pair<Integer, Integer> pixelPosition = new Pair<>(chunkPosition.getX() * Chunk.CHUNK_SIZE * Chunk.GRID_SIZE, chunkPosition.getY() * Chunk.CHUNK_SIZE * Chunk.GRID_SIZE);
-                Vector3 screenPosition = Hamlet.get().getCamera().project(new Vector3(pixelPosition.getX(), pixelPosition.getY(), 0));
-                if(screenPosition.x + Chunk.CHUNK_PIXEL_SIZE * 1.5 < 0 || screenPosition.x > Hamlet.VIEW_SIZE.x || screenPosition.y + Chunk.CHUNK_PIXEL_SIZE * 1.5 < 0 || screenPosition.y > Hamlet.VIEW_SIZE.y) {
-                    continue;
+            for(Chunk chunk : loadedChunks) {
+                long dx = chunk.getChunkX() - focusX;
+                long dy = chunk.getChunkY() - focusY;
+                if(dx * dx + dy * dy > unloadDistance && (writable || !chunk.isDirty())) {
+                    evictionCandidates.add(chunk);
+                } else {
+                    remainingChunks++;
+                    remainingBytes += chunk.getEstimatedSize();
+                }
+            }
+        }
+
+        for(Chunk chunk : evictionCandidates) {
+            unloadChunk(chunk);
+        }
+
+        int maxChunks = settings.getMaxLoadedChunks();
+        long maxBytes = settings.getMaxLoadedBytes();
+        if((maxChunks > 0 && remainingChunks > maxChunks) || (maxBytes > 0 && remainingBytes > maxBytes)) {
+            evictionCandidates.clear();
+            synchronized (loadedChunks) {
+                for(Chunk chunk : loadedChunks) {
+                    long dx = chunk.getChunkX() - focusX;
+                    long dy = chunk.getChunkY() - focusY;
+                    if(dx * dx + dy * dy > loadDistance && (writable || !chunk.isDirty())) {
+                        evictionCandidates.add(chunk);
+                    }
+                }
+            }
+
+            evictionCandidates.sort(Comparator.comparingLong(Chunk::getLastAccessed));
+
+            for(Chunk chunk : evictionCandidates) {
+                if((maxChunks <= 0 || remainingChunks <= maxChunks) && (maxBytes <= 0 || remainingBytes <= maxBytes)) {
+                    break;
                 }
-                chunk.render(spriteBatch);
+
+                remainingChunks--;
+                remainingBytes -= chunk.getEstimatedSize();
+                unloadChunk(chunk);
             }
         }
 
-        box2dWorld.step(1/60f, 6, 2);
+        evictionCandidates.clear();
+        lastEvictionFocus = focus;
+        lastEvictionSize = loadedChunks.size();
+    }
+
+    /**
+     * Starts streaming in the chunk, unless it's still waiting to be saved, in which case it's simply put back.
+     * While it's being saved right now it's left alone, and requested again on a later frame.
+     */
+    private void requestChunk(int chunkX, int chunkY) {
+        long key = ChunkKey.pack(chunkX, chunkY);
+        Chunk unsavedChunk = chunkWriter.getPending(key);
+        if(unsavedChunk != null) {
+            if(!chunkWriter.isSaving(key)) {
+                integrateChunk(unsavedChunk);
+            }
+            return;
+        }
+
+        chunkStreamer.request(chunkX, chunkY);
+    }
+
+    private void integrateChunk(Chunk chunk) {
+        synchronized (loadedChunks) {
+            if(loadedChunks.contains(chunk.getKey())) {
+                return;
+            }
+
+            chunk.touch(frame);
+            loadedChunks.add(chunk);
+        }
+
+        chunkColliders.markDirty(chunk);
+
+        logger.debug("Streamed in chunk at {}, {}!", chunk.getChunkX(), chunk.getChunkY());
+    }
+
+    public void render(SpriteBatch spriteBatch) {
+        frame++;
+        streamChunks();
+
+        viewBounds.update(hamlet.getCamera(), BLOCK_OVERDRAW);
+
+        visibleChunks.clear();
+        synchronized (loadedChunks) {
+            loadedChunks.query(viewBounds.getMinChunkX(), viewBounds.getMinChunkY(), viewBounds.getMaxChunkX(), viewBounds.getMaxChunkY(), visibleChunks);
+        }
+
+        for(int i = 0; i < visibleChunks.size(); i++) {
+            visibleChunks.get(i).touch(frame);
+        }
+
+        spriteBatch.end();
+
+        for(int i = 0; i < visibleChunks.size(); i++) {
+            tileLayerCache.prepare(visibleChunks.get(i));
+        }
+
+        tileLayerCache.begin(hamlet.getCamera().combined);
+        for(int i = 0; i < visibleChunks.size(); i++) {
+            tileLayerCache.draw(visibleChunks.get(i));
+        }
+        tileLayerCache.end();
+
+        spriteBatch.begin();
+
+        renderBlocks(spriteBatch);
+
+        synchronized (simulation.getLock()) {
+            chunkColliders.update();
+            chunkColliders.updateActivation(focusX, focusY, settings.getPhysicsRadius());
+        }
+        simulation.update(Gdx.graphics.getDeltaTime());
 
         spriteBatch.end();
 
+        lightingGovernor.update(Gdx.graphics.getDeltaTime());
         rayHandler.setCombinedMatrix(hamlet.getCamera());
-        rayHandler.updateAndRender();
+        synchronized (simulation.getLock()) {
+            staticLighting.bake(visibleChunks);
+            rayHandler.updateAndRender();
+        }
+        staticLighting.composite(rayHandler, hamlet.getCamera().combined, visibleChunks);
 
         //dDebugRenderer.render(box2dWorld, hamlet.getCamera().combined);
 
         spriteBatch.begin();
     }
 
+    /**
+     * Draws the blocks of all visible chunks one world row at a time, top row first, so a tall block is drawn over
+     * everything behind it even when that's in a neighbouring chunk. {@link #visibleChunks} is ordered by chunk row
+     * from the top, so the chunks of each row are a contiguous run of it.
+     */
+    private void renderBlocks(SpriteBatch spriteBatch) {
+        int rowStart = 0;
+
+        for(int tileY = viewBounds.getMaxTileY(); tileY >= viewBounds.getMinTileY() && rowStart < visibleChunks.size(); tileY--) {
+            int chunkY = Chunk.toChunkCoordinate(tileY);
+            while(rowStart < visibleChunks.size() && visibleChunks.get(rowStart).getChunkY() > chunkY) {
+                rowStart++;
+            }
+
+            int yInChunk = Chunk.toLocalCoordinate(tileY);
+            for(int i = rowStart; i < visibleChunks.size(); i++) {
+                Chunk chunk = visibleChunks.get(i);
+                if(chunk.getChunkY() != chunkY) {
+                    break;
+                }
+
+                chunk.renderRow(spriteBatch, yInChunk, viewBounds);
+            }
+        }
+    }
+
     public Pair<Integer, Integer> getChunkForGridPosition(Pair<Integer, Integer> tilePosition) {
-        return new Pair<>(tilePosition.getX() >> Chunk.BIT_SIZE, tilePosition.getY() >> Chunk.BIT_SIZE);
+        return new Pair<>(Chunk.toChunkCoordinate(tilePosition.getX()), Chunk.toChunkCoordinate(tilePosition.getY()));
     }
 
     public Pair<Integer, Integer> getPositionInChunk(Pair<Integer, Integer> tilePosition) {
-        Pair<Integer, Integer> chunkPosition = getChunkForGridPosition(tilePosition);
-        int x = tilePosition.getX() - (chunkPosition.getX() * Chunk.CHUNK_SIZE);
-        int y = tilePosition.getY() - (chunkPosition.getY() * Chunk.CHUNK_SIZE);
-
-        return new Pair<>(x, y);
+        return new Pair<>(Chunk.toLocalCoordinate(tilePosition.getX()), Chunk.toLocalCoordinate(tilePosition.getY()));
     }
 
     public void setTile(TileType type, int x, int y) {
-        Pair<Integer, Integer> chunkPosition = getChunkForGridPosition(new Pair<>(x, y));
-        Pair<Integer, Integer> positionInChunk = getPositionInChunk(new Pair<>(x, y));
-
-        if(!isChunkLoaded(chunkPosition)) {
-            boolean chunkLoaded = loadChunk(chunkPosition);
-            if(!chunkLoaded) {
-                logger.error("Failed to set tile at {}: no chunk was loaded");
-                return;
-            }
-        }
-
-        Optional<Chunk> optionalChunk = getChunk(chunkPosition);
-        if(!optionalChunk.isPresent()) {
-            logger.error("Failed to set tile at {}: no chunk found at given position", chunkPosition);
+        Chunk chunk = getOrLoadChunk(Chunk.toChunkCoordinate(x), Chunk.toChunkCoordinate(y));
+        if(chunk == null) {
+            logger.error("Failed to set tile at {}, {}: no chunk was loaded", x, y);
             return;
         }
 
-        Chunk chunk = optionalChunk.get();
+        chunk.setTile(type, Chunk.toLocalCoordinate(x), Chunk.toLocalCoordinate(y));
+    }
 
-        chunk.setTile(type, positionInChunk.getX(), positionInChunk.getY());
+    /**
+     * Looks up the type of a tile without creating a {@link Tile} view of it. Returns null for empty tiles and
+     * for chunks which aren't loaded yet, in which case the chunk is requested from the streamer.
+     */
+    public TileType getTileType(int x, int y) {
+        int chunkX = Chunk.toChunkCoordinate(x);
+        int chunkY = Chunk.toChunkCoordinate(y);
+
+        Chunk chunk = getLoadedChunk(chunkX, chunkY);
+        if(chunk == null) {
+            requestChunk(chunkX, chunkY);
+            return null;
+        }
+
+        return chunk.getTileType(Chunk.toLocalCoordinate(x), Chunk.toLocalCoordinate(y));
     }
 
+    /**
+     * Returns a view of a tile, or null like {@link #getTileType(int, int)}. The same view is reused by every call,
+     * so it's only valid until the next one; use {@link Chunk#getTile(int, int)} for a view that can be kept.
+     */
     public Tile getTile(int x, int y) {
-        Pair<Integer, Integer> chunkPosition = getChunkForGridPosition(new Pair<>(x, y));
-        Pair<Integer, Integer> positionInChunk = getPositionInChunk(new Pair<>(x, y));
-
-        if(!isChunkLoaded(chunkPosition)) {
-            boolean chunkLoaded = loadChunk(chunkPosition);
-            if(!chunkLoaded) {
-                logger.error("Failed to get tile at {}: no chunk was loaded");
-                return null;
-            }
-        }
+        int chunkX = Chunk.toChunkCoordinate(x);
+        int chunkY = Chunk.toChunkCoordinate(y);
 
-        Optional<Chunk> optionalChunk = getChunk(chunkPosition);
-        if(!optionalChunk.isPresent()) {
-            logger.error("Failed to get tile at {}: no chunk found at given position", chunkPosition);
+        Chunk chunk = getLoadedChunk(chunkX, chunkY);
+        if(chunk == null) {
+            requestChunk(chunkX, chunkY);
             return null;
         }
 
-        Chunk chunk = optionalChunk.get();
+        int xInChunk = Chunk.toLocalCoordinate(x);
+        int yInChunk = Chunk.toLocalCoordinate(y);
+        TileType type = chunk.getTileType(xInChunk, yInChunk);
+        if(type == null) {
+            return null;
+        }
 
-        return chunk.getTile(positionInChunk.getX(), positionInChunk.getY());
+        return tileView.set(type, chunk, xInChunk, yInChunk, chunk.getTileVariants()[Chunk.index(xInChunk, yInChunk)]);
     }
 
     public void removeTile(int x, int y) {
-        Pair<Integer, Integer> chunkPosition = getChunkForGridPosition(new Pair<>(x, y));
-        Pair<Integer, Integer> positionInChunk = getPositionInChunk(new Pair<>(x, y));
-
-        if(!isChunkLoaded(chunkPosition)) {
-            boolean chunkLoaded = loadChunk(chunkPosition);
-            if(!chunkLoaded) {
-                logger.error("Failed to remove tile from {}: no chunk was loaded");
-                return;
-            }
+        Chunk chunk = getOrLoadChunk(Chunk.toChunkCoordinate(x), Chunk.toChunkCoordinate(y));
+        if(chunk == null) {
+            logger.error("Failed to remove tile from {}, {}: no chunk was loaded", x, y);
+            return;
         }
 
-        Optional<Chunk> optionalChunk = getChunk(chunkPosition);
-        if(!optionalChunk.isPresent()) {
-            logger.error("Failed to remove tile from {}: no chunk found at given position", chunkPosition);
+        chunk.removeTile(Chunk.toLocalCoordinate(x), Chunk.toLocalCoordinate(y));
+    }
+
+    public void setBlock(BlockType blockType, int x, int y) {
+        Chunk chunk = getOrLoadChunk(Chunk.toChunkCoordinate(x), Chunk.toChunkCoordinate(y));
+        if(chunk == null) {
+            logger.error("Failed to set block at {}, {}: no chunk was loaded", x, y);
             return;
         }
 
-        Chunk chunk = optionalChunk.get();
+        int xInChunk = Chunk.toLocalCoordinate(x);
+        int yInChunk = Chunk.toLocalCoordinate(y);
 
-        chunk.removeTile(positionInChunk.getX(), positionInChunk.getY());
+        Block previous = chunk.getBlock(xInChunk, yInChunk);
+        Block block = chunk.setBlock(blockType, xInChunk, yInChunk);
+
+        if((block != null && block.hasPhysics()) || (previous != null && previous.hasPhysics())) {
+            chunkColliders.markDirty(chunk);
+        }
     }
 
-    public void setBlock(BlockType blockType, int x, int y) {
-        Pair<Integer, Integer> chunkPosition = getChunkForGridPosition(new Pair<>(x, y));
-        Pair<Integer, Integer> positionInChunk = getPositionInChunk(new Pair<>(x, y));
+    public Block getBlock(int x, int y) {
+        int chunkX = Chunk.toChunkCoordinate(x);
+        int chunkY = Chunk.toChunkCoordinate(y);
 
-        if(!isChunkLoaded(chunkPosition)) {
-            boolean chunkLoaded = loadChunk(chunkPosition);
-            if(!chunkLoaded) {
-                logger.error("Failed to set block at {}: no chunk was loaded");
-                return;
-            }
+        Chunk chunk = getLoadedChunk(chunkX, chunkY);
+        if(chunk == null) {
+            requestChunk(chunkX, chunkY);
+            return null;
         }
 
-        Optional<Chunk> optionalChunk = getChunk(chunkPosition);
-        if(!optionalChunk.isPresent()) {
-            logger.error("Failed to block tile at {}: no chunk found at given position", chunkPosition);
+        return chunk.getBlock(Chunk.toLocalCoordinate(x), Chunk.toLocalCoordinate(y));
+    }
+
+    public void removeBlock(int x, int y) {
+        Chunk chunk = getOrLoadChunk(Chunk.toChunkCoordinate(x), Chunk.toChunkCoordinate(y));
+        if(chunk == null) {
+            logger.error("Failed to remove block from {}, {}: no chunk was loaded", x, y);
             return;
         }
 
-        Chunk chunk = optionalChunk.get();
+        int xInChunk = Chunk.toLocalCoordinate(x);
+        int yInChunk = Chunk.toLocalCoordinate(y);
 
-        Block block = chunk.setBlock(blockType, positionInChunk.getX(), positionInChunk.getY());
+        Block block = chunk.getBlock(xInChunk, yInChunk);
+        if(block == null) {
+            logger.error("Failed to remove block from {}, {}: no block found at the given position", x, y);
+            return;
+        }
+        chunk.removeBlock(xInChunk, yInChunk);
+        if(block.hasPhysics()) {
+            chunkColliders.markDirty(chunk);
+        }
+    }
 
-        if(block != null && block.hasPhysics()) {
-            BodyDef bodyDef = new BodyDef();
-            bodyDef.type = BodyDef.BodyType.StaticBody;
-            Pair<Integer, Integer> pixelPosition = gridToPixelPosition(new Pair<>(x, y));
-            bodyDef.position.set(new Vector2(pixelPosition.getX(), pixelPosition.getY()));
-            bodyDef.fixedRotation = true;
+    /**
+     * Sets every tile in the rectangle (inclusive, in tile coordinates) to the given type, or clears them if the
+     * type is null. Like the other bulk edits, each chunk is looked up, loaded if needed and marked as changed
+     * only once, so the cost mostly depends on the number of chunks touched. Chunks which aren't loaded yet are
+     * loaded synchronously, as with {@link #loadChunk(int, int)}.
+     *
+     * @return the number of tiles changed
+     */
+    public int fillRectangle(TileType type, int minX, int minY, int maxX, int maxY) {
+        return fillTiles(type, minX, minY, maxX, maxY, null);
+    }
 
-            Body body = box2dWorld.createBody(bodyDef);
-            block.setCreatedBox2DBody(body);
+    public int fillCircle(TileType type, int centreX, int centreY, int radius) {
+        int radiusSquared = radius * radius;
+        return fillTiles(type, centreX - radius, centreY - radius, centreX + radius, centreY + radius, (x, y, current) -> {
+            int dx = x - centreX;
+            int dy = y - centreY;
+            return dx * dx + dy * dy <= radiusSquared;
+        });
+    }
 
-            FixtureDef fixtureDef = new FixtureDef();
-            fixtureDef.density = 1;
-            fixtureDef.friction = 1;
-            fixtureDef.restitution = 0;
-            fixtureDef.shape = block.getShape();
-            fixtureDef.isSensor = false;
+    public int replaceTiles(TileType from, TileType to, int minX, int minY, int maxX, int maxY) {
+        return fillTiles(to, minX, minY, maxX, maxY, (x, y, current) -> current == from);
+    }
 
-            body.createFixture(fixtureDef);
+    /**
+     * Sets the tiles of the rectangle which the filter accepts to the given type, or clears them if it's null.
+     */
+    public int fillTiles(TileType type, int minX, int minY, int maxX, int maxY, TileFilter filter) {
+        int[] changed = new int[1];
+        int chunks = forEachChunkSpan(minX, minY, maxX, maxY, (chunk, localMinX, localMinY, localMaxX, localMaxY, offsetX, offsetY) ->
+                changed[0] += chunk.fillTiles(type, localMinX, localMinY, localMaxX, localMaxY, filter));
 
-            block.getShape().dispose();
-        }
+        logger.debug("Changed {} tiles across {} chunks", changed[0], chunks);
+        return changed[0];
     }
 
-    public Block getBlock(int x, int y) {
-        Pair<Integer, Integer> chunkPosition = getChunkForGridPosition(new Pair<>(x, y));
-        Pair<Integer, Integer> positionInChunk = getPositionInChunk(new Pair<>(x, y));
-
-        if(!isChunkLoaded(chunkPosition)) {
-            boolean chunkLoaded = loadChunk(chunkPosition);
-            if(!chunkLoaded) {
-                logger.error("Failed to get block no chunk was loaded");
-                return null;
-            }
+    /**
+     * Copies the tiles of a {@code width} by {@code height} rectangle to another position. The rectangles may
+     * overlap, as the source is read in full before anything is written. Tiles of chunks which couldn't be loaded
+     * are copied as empty.
+     */
+    public void copyRegion(int sourceX, int sourceY, int width, int height, int destinationX, int destinationY) {
+        if(width <= 0 || height <= 0) {
+            return;
         }
 
-        Optional<Chunk> optionalChunk = getChunk(chunkPosition);
-        if(!optionalChunk.isPresent()) {
-            logger.error("Failed to get block at {}: no chunk found at given position", chunkPosition);
-            return null;
-        }
+        short[] typeIds = new short[width * height];
+        byte[] variants = new byte[width * height];
+
+        forEachChunkSpan(sourceX, sourceY, sourceX + width - 1, sourceY + height - 1, (chunk, localMinX, localMinY, localMaxX, localMaxY, offsetX, offsetY) -> {
+            for(int x = localMinX; x <= localMaxX; x++) {
+                int index = (offsetX + x - localMinX) * height + offsetY;
+                System.arraycopy(chunk.getTileTypeIds(), Chunk.index(x, localMinY), typeIds, index, localMaxY - localMinY + 1);
+                System.arraycopy(chunk.getTileVariants(), Chunk.index(x, localMinY), variants, index, localMaxY - localMinY + 1);
+            }
+        });
 
-        Chunk chunk = optionalChunk.get();
+        int chunks = forEachChunkSpan(destinationX, destinationY, destinationX + width - 1, destinationY + height - 1, (chunk, localMinX, localMinY, localMaxX, localMaxY, offsetX, offsetY) ->
+                chunk.pasteTiles(localMinX, localMinY, localMaxX, localMaxY, typeIds, variants, offsetX, offsetY, height));
 
-        return chunk.getBlock(positionInChunk.getX(), positionInChunk.getY());
+        logger.debug("Copied {} tiles across {} chunks", width * height, chunks);
     }
 
-    public void removeBlock(int x, int y) {
-        Pair<Integer, Integer> chunkPosition = getChunkForGridPosition(new Pair<>(x, y));
-        Pair<Integer, Integer> positionInChunk = getPositionInChunk(new Pair<>(x, y));
+    private interface ChunkSpanAction {
+        /**
+         * @param offsetX the span's offset from the left edge of the whole region
+         * @param offsetY the span's offset from the bottom edge of the whole region
+         */
+        void apply(Chunk chunk, int minX, int minY, int maxX, int maxY, int offsetX, int offsetY);
+    }
 
-        if(!isChunkLoaded(chunkPosition)) {
-            boolean chunkLoaded = loadChunk(chunkPosition);
-            if(!chunkLoaded) {
-                logger.error("Failed to remove block from {}: no chunk was loaded");
-                return;
+    /**
+     * Splits the rectangle along chunk borders and runs the action once for each chunk, with the part of the
+     * rectangle inside it in local coordinates. Chunks which aren't loaded are loaded first.
+     *
+     * @return the number of chunks visited
+     */
+    private int forEachChunkSpan(int minX, int minY, int maxX, int maxY, ChunkSpanAction action) {
+        int chunks = 0;
+
+        for(int chunkX = Chunk.toChunkCoordinate(minX); chunkX <= Chunk.toChunkCoordinate(maxX); chunkX++) {
+            for(int chunkY = Chunk.toChunkCoordinate(minY); chunkY <= Chunk.toChunkCoordinate(maxY); chunkY++) {
+                Chunk chunk = getOrLoadChunk(chunkX, chunkY);
+                if(chunk == null) {
+                    logger.error("Failed to edit chunk at {}, {}: no chunk was loaded", chunkX, chunkY);
+                    continue;
+                }
+
+                int originX = chunkX << Chunk.BIT_SIZE;
+                int originY = chunkY << Chunk.BIT_SIZE;
+                int spanMinX = Math.max(minX, originX);
+                int spanMinY = Math.max(minY, originY);
+                int spanMaxX = Math.min(maxX, originX + Chunk.CHUNK_SIZE - 1);
+                int spanMaxY = Math.min(maxY, originY + Chunk.CHUNK_SIZE - 1);
+
+                action.apply(chunk, spanMinX - originX, spanMinY - originY, spanMaxX - originX, spanMaxY - originY, spanMinX - minX, spanMinY - minY);
+                chunks++;
             }
         }
 
-        Optional<Chunk> optionalChunk = getChunk(chunkPosition);
-        if(!optionalChunk.isPresent()) {
-            logger.error("Failed to remove block from {}: no chunk found at given position", chunkPosition);
-            return;
-        }
+        return chunks;
+    }
 
-        Chunk chunk = optionalChunk.get();
+    public void dispose() {
+        simulation.shutdown();
+        chunkStreamer.shutdown();
+        unloadAllChunks();
+        chunkWriter.shutdown();
+        chunkProvider.dispose();
+        tileLayerCache.dispose();
+        chunkColliders.dispose();
+        staticLighting.dispose();
+    }
 
-        Block block = chunk.getBlock(positionInChunk.getX(), positionInChunk.getY());
-        if(block == null) {
-            logger.error("Failed to remove block from {}: no block found at the given position", chunkPosition);
-            return;
-        }
-        if(block.hasPhysics()) {
-            box2dWorld.destroyBody(block.getCreatedBox2DBody());
+    /**
+     * Adds a dynamic light, whose rays are scaled with the rest of the lighting quality by the
+     * {@link LightingGovernor}. Lights which never move should go to the {@link StaticLighting} instead.
+     */
+    public PointLight addPointLight(int rays, Color color, float distance, float x, float y) {
+        AdaptivePointLight light = new AdaptivePointLight(rayHandler, rays, color, distance, x, y);
+        lightingGovernor.addLight(light);
+
+        return light;
+    }
+
+    public void removeLight(Light light) {
+        if(light instanceof AdaptivePointLight) {
+            lightingGovernor.removeLight((AdaptivePointLight) light);
         }
-        chunk.removeBlock(positionInChunk.getX(), positionInChunk.getY());
+
+        light.remove();
     }
 
     public void setAmbientLight(float r, float g, float b, float a) {
         rayHandler.setAmbientLight(r, g, b, a);
+        staticLighting.setAmbientLight(r, g, b, a);
     }
 
     public Pair<Integer, Integer> pixelToGridPosition(float x, float y) {
@@ -352,15 +732,4 @@ public class World {
     public Pair<Integer, Integer> gridToPixelPosition(Pair<Integer, Integer> tilePosition) {
         return new Pair<>(tilePosition.getX() * Chunk.GRID_SIZE, tilePosition.getY() * Chunk.GRID_SIZE);
     }
-
-    private class ChunkComparator implements Comparator<Chunk> {
-        @Override
-        public int compare(Chunk o1, Chunk o2) {
-            if(o1.getChunkPosition().getX() < o2.getChunkPosition().getX() || o1.getChunkPosition().getY() < o2.getChunkPosition().getY()) {
-                return 1;
-            } else {
-                return -1;
-            }
-        }
-    }
 }
@@ -0,0 +1,150 @@
+package sk.accerek.hamlet.world.base;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Builder
+@Getter
+public class WorldSettings {
+    public static WorldSettings defaults() {
+        return builder().build();
+    }
+
+    /**
+     * Number of background threads loading chunks through the {@link ChunkProvider}.
+     */
+    @Builder.Default
+    private final int streamingThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    /**
+     * Chunks closer than this many chunks to the camera are streamed in.
+     */
+    @Builder.Default
+    private final int loadRadius = 2;
+
+    /**
+     * Chunks further than this many chunks from the camera are unloaded. Always treated as at least
+     * {@code loadRadius + 1}, so chunks right at the edge of the load radius don't keep loading and unloading.
+     */
+    @Builder.Default
+    private final int unloadRadius = 4;
+
+    /**
+     * Once more chunks than this are loaded, the least recently used ones are unloaded. 0 disables the limit.
+     */
+    @Builder.Default
+    private final int maxLoadedChunks = 512;
+
+    /**
+     * Like {@code maxLoadedChunks}, but for {@link Chunk#getEstimatedSize()} summed over all loaded chunks.
+     */
+    @Builder.Default
+    private final long maxLoadedBytes = 0;
+
+    /**
+     * Bodies of chunks further than this many chunks from both the camera and every dynamic body are deactivated,
+     * so Box2D skips them until something comes close again.
+     */
+    @Builder.Default
+    private final int physicsRadius = 2;
+
+    /**
+     * Physics steps per second. The simulation runs at this rate no matter how fast frames are rendered.
+     */
+    @Builder.Default
+    private final int tickRate = 60;
+
+    /**
+     * Most physics steps taken to catch up after a slow frame. Time beyond that is dropped, so the simulation
+     * slows down for a moment instead of the frame rate spiralling down.
+     */
+    @Builder.Default
+    private final int maxStepsPerFrame = 5;
+
+    /**
+     * Blend dynamic bodies between their last two physics steps when rendering, see
+     * {@link sk.accerek.hamlet.world.simulation.Simulation#getInterpolatedPosition}.
+     */
+    @Builder.Default
+    private final boolean interpolatePhysics = true;
+
+    /**
+     * Step physics on a dedicated simulation thread instead of the render thread.
+     */
+    @Builder.Default
+    private final boolean simulationThread = false;
+
+    /**
+     * Let the {@link sk.accerek.hamlet.world.lighting.LightingGovernor} lower dynamic lighting quality when frames
+     * take longer than {@code targetFrameTime}. When disabled, lighting stays at the highest quality below.
+     */
+    @Builder.Default
+    private final boolean adaptiveLighting = true;
+
+    /**
+     * Frame time, in seconds, the lighting governor tries to keep frames within.
+     */
+    @Builder.Default
+    private final float targetFrameTime = 1f / 60;
+
+    /**
+     * Bounds of the blur passes run over the dynamic light map.
+     */
+    @Builder.Default
+    private final int minBlurPasses = 1;
+    @Builder.Default
+    private final int maxBlurPasses = 5;
+
+    /**
+     * Bounds of the dynamic light map's resolution, as the screen size divided by these.
+     */
+    @Builder.Default
+    private final int minLightMapDivisor = 4;
+    @Builder.Default
+    private final int maxLightMapDivisor = 16;
+
+    /**
+     * The smallest fraction of their rays dynamic lights are scaled down to.
+     */
+    @Builder.Default
+    private final float minRayScale = .25f;
+
+    /**
+     * Seconds frames have to stay within the target before lighting quality is raised again.
+     */
+    @Builder.Default
+    private final float lightingUpgradeDelay = 3f;
+
+    /**
+     * Size in pixels of the lightmap static lights are baked into for each chunk they reach. The default matches
+     * the quarter resolution the dynamic lights are rendered at.
+     */
+    @Builder.Default
+    private final int lightmapResolution = 256;
+
+    /**
+     * Most chunk lightmaps baked in a single frame. Chunks over the budget keep showing their previous lightmap,
+     * or none, until a following frame gets to them.
+     */
+    @Builder.Default
+    private final int lightBakesPerFrame = 2;
+
+    /**
+     * Number of background threads persisting modified chunks.
+     */
+    @Builder.Default
+    private final int writerThreads = 2;
+
+    /**
+     * Chunk saves that can be queued up before the thread unloading a chunk has to save it itself.
+     */
+    @Builder.Default
+    private final int writerQueueSize = 64;
+
+    /**
+     * Upper bound on the {@link com.badlogic.gdx.graphics.g2d.SpriteCache} pages baked tile layers are kept in,
+     * each holding 31 chunks.
+     */
+    @Builder.Default
+    private final int tileCachePages = 4;
+}
@@ -1,11 +1,9 @@
 package sk.accerek.hamlet.world.block;
 
 import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.Animation;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
-import com.badlogic.gdx.physics.box2d.Body;
 import com.badlogic.gdx.physics.box2d.Shape;
 import lombok.Getter;
 import lombok.Setter;
@@ -15,80 +13,107 @@ import sk.accerek.hamlet.world.base.Chunk;
 import sk.accerek.hamlet.world.base.Pair;
 import sk.accerek.hamlet.world.tile.TileType;
 
-import java.util.Random;
-
 public abstract class Block {
-    private final Hamlet hamlet = Hamlet.get();
-    private final TextureProvider textureProvider = hamlet.getTextureProvider();
-
-    private Texture texture = textureProvider.getBackupTexture();
+    // Only the texture names are picked in create(), which may run on a streaming thread. The regions are
+    // looked up on the first render, on the GL thread.
+    private String textureKey = null;
+    private String animationKey = null;
+    private int animationTileSize;
+    private float animationFrameTime;
+
+    private TextureRegion region = null;
     private Animation<TextureRegion> animation = null;
 
-    private @Getter @Setter Pair<Integer, Integer> positionInChunk;
+    private @Getter int variant = 0;
+    private @Getter int xInChunk;
+    private @Getter int yInChunk;
     private @Getter @Setter Chunk chunk;
     private final @Getter BlockType blockType = BlockType.getTypeFor(getClass());
 
-    private @Getter @Setter Body createdBox2DBody;
-
     private float stateTime = 0f;
 
     public void render(SpriteBatch spriteBatch) {
-        Pair<Integer, Integer> pixelPosition = getPixelPosition();
+        int pixelX = getPixelX();
+        int pixelY = getPixelY();
 
         float width, height;
 
-        if (animation != null) {
+        if (animationKey != null) {
+            if (animation == null) {
+                animation = createAnimation();
+            }
+
             stateTime += Gdx.graphics.getDeltaTime();
             TextureRegion region = animation.getKeyFrame(stateTime, true);
 
             width = 2 * Math.round(region.getRegionWidth() / 2);
             height = 2 * Math.round(region.getRegionHeight() / 2);
 
-            spriteBatch.draw(region, pixelPosition.getX(), pixelPosition.getY(), width, height);
+            spriteBatch.draw(region, pixelX, pixelY, width, height);
 
             return;
         }
 
-        width = 2 * Math.round(texture.getWidth() / 2);
-        height = 2 * Math.round(texture.getHeight() / 2);
+        if (region == null) {
+            TextureProvider textureProvider = Hamlet.get().getTextureProvider();
+            region = textureKey != null ? textureProvider.getRegion(textureKey) : new TextureRegion(textureProvider.getBackupTexture());
+        }
+
+        width = 2 * Math.round(region.getRegionWidth() / 2);
+        height = 2 * Math.round(region.getRegionHeight() / 2);
 
-        spriteBatch.draw(texture, pixelPosition.getX(), pixelPosition.getY(), width, height);
+        spriteBatch.draw(region, pixelX, pixelY, width, height);
+    }
+
+    public void setPositionInChunk(int xInChunk, int yInChunk) {
+        this.xInChunk = xInChunk;
+        this.yInChunk = yInChunk;
+    }
+
+    public Pair<Integer, Integer> getPositionInChunk() {
+        return new Pair<>(xInChunk, yInChunk);
+    }
+
+    public int getPixelX() {
+        return chunk.getChunkX() * Chunk.CHUNK_PIXEL_SIZE + xInChunk * Chunk.GRID_SIZE;
+    }
+
+    public int getPixelY() {
+        return chunk.getChunkY() * Chunk.CHUNK_PIXEL_SIZE + yInChunk * Chunk.GRID_SIZE;
     }
 
     public Pair<Integer, Integer> getPixelPosition() {
-        Pair<Integer, Integer> chunkPosition = chunk.getChunkPosition();
-        return new Pair<>(
-                chunkPosition.getX() * (Chunk.CHUNK_SIZE * Chunk.GRID_SIZE) + positionInChunk.getX() * Chunk.GRID_SIZE,
-                chunkPosition.getY() * (Chunk.CHUNK_SIZE * Chunk.GRID_SIZE) + positionInChunk.getY() * Chunk.GRID_SIZE);
+        return new Pair<>(getPixelX(), getPixelY());
     }
 
-    public Pair<Integer, Integer> getWorldPosition() {
-        Pair<Integer, Integer> chunkPosition = chunk.getChunkPosition();
-        return new Pair<>(
-                chunkPosition.getX() * Chunk.CHUNK_SIZE + positionInChunk.getX(),
-                chunkPosition.getY() * Chunk.CHUNK_SIZE + positionInChunk.getY());
-    }
-
-    void useStaticTexture(String... textureNames) {
-        Texture texture;
-        if (textureNames.length == 1) {
-            texture = textureProvider.getTexture("blocks/" + textureNames[0]);
-        } else {
-            Random random = new Random();
-            texture = textureProvider.getTexture("blocks/" + textureNames[random.nextInt(textureNames.length)]);
-        }
+    public int getWorldX() {
+        return (chunk.getChunkX() << Chunk.BIT_SIZE) + xInChunk;
+    }
 
-        if (texture == null) {
-            texture = textureProvider.getBackupTexture();
-        }
+    public int getWorldY() {
+        return (chunk.getChunkY() << Chunk.BIT_SIZE) + yInChunk;
+    }
 
-        this.texture = texture;
+    public Pair<Integer, Integer> getWorldPosition() {
+        return new Pair<>(getWorldX(), getWorldY());
+    }
+
+    void useStaticTexture(String textureName) {
+        this.textureKey = "blocks/" + textureName;
+        this.region = null;
     }
 
     void useAnimation(String tileSet, int tileSize, float frameTime) {
-        Texture tileSetTexture = textureProvider.getTexture("blocks/" + tileSet);
+        this.animationKey = "blocks/" + tileSet;
+        this.animationTileSize = tileSize;
+        this.animationFrameTime = frameTime;
+        this.animation = null;
+    }
 
-        TextureRegion[][] frames = TextureRegion.split(tileSetTexture, tileSize, tileSize);
+    private Animation<TextureRegion> createAnimation() {
+        TextureRegion tileSetRegion = Hamlet.get().getTextureProvider().getRegion(animationKey);
+
+        TextureRegion[][] frames = tileSetRegion.split(animationTileSize, animationTileSize);
         TextureRegion[] frames0 = new TextureRegion[frames.length * frames[0].length];
         int index = 0;
         for (TextureRegion[] frame : frames) {
@@ -97,19 +122,65 @@ public abstract class Block {
             }
         }
 
-        this.animation = new Animation<>(frameTime, frames0);
+        return new Animation<>(animationFrameTime, frames0);
+    }
+
+    /**
+     * Picks a number from 0 to {@code bound} for this block, which comes out the same every time a block is placed
+     * at this position of the world. {@code salt} tells apart different choices of the same block.
+     */
+    int pick(int salt, int bound) {
+        return chunk.pick(xInChunk, yInChunk, salt, bound);
+    }
+
+    /**
+     * Records the variant {@link #create()} chose, which is what's saved with the chunk, and applies it.
+     */
+    void setVariant(int variant) {
+        if(variant < 0 || variant >= Chunk.MAX_VARIANTS) {
+            throw new IllegalArgumentException("Block variants must be between 0 and " + (Chunk.MAX_VARIANTS - 1) + ", got " + variant);
+        }
+
+        this.variant = variant;
+        applyVariant(variant);
+    }
+
+    /**
+     * Sets up the block's looks for a variant, both when it's created and when it's restored from a saved chunk.
+     */
+    void applyVariant(int variant) {
+
+    }
+
+    /**
+     * Sets up a block loaded from a saved chunk with the variant it was created with, instead of {@link #create()}.
+     */
+    public void restore(int variant) {
+        setVariant(Math.max(0, Math.min(Chunk.MAX_VARIANTS - 1, variant)));
     }
 
     public abstract boolean hasPhysics();
 
+    /**
+     * Solid blocks fill their whole tile, so their colliders are merged with those of neighbouring solid blocks
+     * instead of being built from {@link #getShape()}.
+     */
+    public boolean isSolid() {
+        return false;
+    }
+
     public abstract Shape getShape();
 
+    /**
+     * Called when the block is placed. Blocks with more than one look pick theirs here, through
+     * {@link #setVariant(int)}.
+     */
     public abstract void create();
 
     @Override
     public String toString() {
         return getClass().getSimpleName() + "{" +
-                "positionInChunk=" + positionInChunk +
+                "positionInChunk=" + getPositionInChunk() +
                 ", position=" + getWorldPosition() +
                 ", blockType=" + blockType +
                 '}';
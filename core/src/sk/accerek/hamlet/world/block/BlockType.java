@@ -1,25 +1,99 @@
 package sk.accerek.hamlet.world.block;
 
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 
-import java.util.Arrays;
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
-@RequiredArgsConstructor
-public enum BlockType {
-    TEST(TestBlock.class), TOWER_WALL(TowerWallBlock.class);
+/**
+ * The kinds of blocks that can be placed in a chunk. Each type is registered once with the constructor of its
+ * block class, so creating a block is a plain call and finding the type of a block is a single lookup.
+ * <p>
+ * The built-in types are below, more can be added with {@link #register(String, Class, Supplier)}. Names are
+ * what chunks are saved with, so they must stay the same once chunks with the type in them were saved.
+ */
+public final class BlockType {
+    private static final Map<String, BlockType> BY_NAME = new ConcurrentHashMap<>();
+    private static final List<BlockType> VALUES = Collections.synchronizedList(new ArrayList<>());
+    private static final ClassValue<BlockType> BY_CLASS = new ClassValue<BlockType>() {
+        @Override
+        protected BlockType computeValue(Class<?> type) {
+            synchronized (VALUES) {
+                for(BlockType blockType : VALUES) {
+                    if(blockType.clazz == type) {
+                        return blockType;
+                    }
+                }
+            }
 
+            return null;
+        }
+    };
+
+    public static final BlockType TEST = register("TEST", TestBlock.class, TestBlock::new);
+    public static final BlockType TOWER_WALL = register("TOWER_WALL", TowerWallBlock.class, TowerWallBlock::new);
+
+    private final @Getter String name;
     private final Class<? extends Block> clazz;
+    private final Supplier<? extends Block> factory;
+
+    private BlockType(String name, Class<? extends Block> clazz, Supplier<? extends Block> factory) {
+        this.name = name;
+        this.clazz = clazz;
+        this.factory = factory;
+    }
+
+    public static <T extends Block> BlockType register(String name, Class<T> clazz, Supplier<T> factory) {
+        BlockType blockType = new BlockType(name, clazz, factory);
+
+        synchronized (VALUES) {
+            if(BY_NAME.putIfAbsent(name, blockType) != null) {
+                throw new IllegalArgumentException("A block type named " + name + " is already registered");
+            }
+
+            VALUES.add(blockType);
+        }
+
+        // A lookup made before the type was registered could have cached null for the class
+        BY_CLASS.remove(clazz);
+
+        return blockType;
+    }
 
     public Class<? extends Block> getClazz() {
         return clazz;
     }
 
+    /**
+     * Creates a new block of this type. It still has to be placed in a chunk and {@link Block#create() created}.
+     */
+    public Block newBlock() {
+        return factory.get();
+    }
+
     public static BlockType getTypeFor(Class<? extends Block> clazz) {
-        BlockType[] types = values();
+        return BY_CLASS.get(clazz);
+    }
+
+    /**
+     * @return the type registered under the name, or null if there's none
+     */
+    public static BlockType getByName(String name) {
+        return BY_NAME.get(name);
+    }
+
+    public static List<BlockType> values() {
+        synchronized (VALUES) {
+            return new ArrayList<>(VALUES);
+        }
+    }
 
-        Optional<BlockType> optionalBlockType = Arrays.stream(types).filter(type -> type.clazz == clazz).findFirst();
-        return optionalBlockType.orElse(null);
+    @Override
+    public String toString() {
+        return name;
     }
 }
@@ -4,66 +4,51 @@ import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.PolygonShape;
 import com.badlogic.gdx.physics.box2d.Shape;
 import lombok.Getter;
-import sk.accerek.hamlet.world.base.Pair;
-import sk.accerek.hamlet.world.tile.Tile;
 import sk.accerek.hamlet.world.tile.TileType;
 
-import java.util.Random;
-
 public class TowerWallBlock extends Block {
+    private static final int TEXTURE_SALT = 0;
+    private static final int MOSS_SALT = 1;
+
+    private static final MossState[] MOSS_STATES = MossState.values();
+    // Indexed by moss state, the variant is the moss state's ordinal * 2 + the texture's index
+    private static final String[][] TEXTURES = {
+            {"tower_wall/tower_wall_1.png", "tower_wall/tower_wall_2.png"},
+            {"tower_wall/rarely_mossy_tower_wall_1.png", "tower_wall/rarely_mossy_tower_wall_2.png"},
+            {"tower_wall/mossy_tower_wall_1.png", "tower_wall/mossy_tower_wall_2.png"}
+    };
+
     private @Getter MossState mossState = MossState.REGULAR;
 
     @Override
     public void create() {
-        Pair<Integer, Integer> positionInChunk = getPositionInChunk();
-        Block blockBelow = getChunk().getBlock(positionInChunk.getX(), positionInChunk.getY() - 1);
-        Block blockBelow0 = getChunk().getBlock(positionInChunk.getX(), positionInChunk.getY() - 3);
-        Tile tileBelow = getChunk().getTile(positionInChunk.getX(), positionInChunk.getY() - 1);
-
-        if (blockBelow == null && tileBelow != null && tileBelow.getTileType() == TileType.GRASS) {
-            useStaticTexture("tower_wall/mossy_tower_wall_1.png", "tower_wall/mossy_tower_wall_2.png");
-            mossState = MossState.MOSSY;
-            return;
+        Block blockBelow = getChunk().getBlock(getXInChunk(), getYInChunk() - 1);
+        TileType tileBelow = getChunk().getTileType(getXInChunk(), getYInChunk() - 1);
+
+        setVariant(pickMossState(blockBelow, tileBelow).ordinal() * 2 + pick(TEXTURE_SALT, 2));
+    }
+
+    private MossState pickMossState(Block blockBelow, TileType tileBelow) {
+        if (blockBelow == null && tileBelow == TileType.GRASS) {
+            return MossState.MOSSY;
         }
 
         if (!(blockBelow instanceof TowerWallBlock)) {
-            useStaticTexture("tower_wall/tower_wall_1.png", "tower_wall/tower_wall_2.png");
-            mossState = MossState.REGULAR;
-            return;
+            return MossState.REGULAR;
         }
 
-        Random random = new Random();
-        TowerWallBlock towerWallBlock = (TowerWallBlock) blockBelow;
-
-        switch (towerWallBlock.getMossState()) {
-            case MOSSY:
-                int n = random.nextInt(2);
-                if (n == 1) {
-                    useStaticTexture("tower_wall/rarely_mossy_tower_wall_1.png", "tower_wall/rarely_mossy_tower_wall_2.png");
-                    mossState = MossState.BARELY_MOSSY;
-                } else {
-                    useStaticTexture("tower_wall/mossy_tower_wall_1.png", "tower_wall/mossy_tower_wall_2.png");
-                    mossState = MossState.MOSSY;
-                }
-                return;
-
-            case BARELY_MOSSY:
-                useStaticTexture("tower_wall/tower_wall_1.png", "tower_wall/tower_wall_2.png");
-                mossState = MossState.REGULAR;
-                return;
+        // Moss fades out over the wall blocks above a mossy one
+        if (((TowerWallBlock) blockBelow).getMossState() == MossState.MOSSY) {
+            return pick(MOSS_SALT, 2) == 1 ? MossState.BARELY_MOSSY : MossState.MOSSY;
         }
 
+        return MossState.REGULAR;
+    }
 
-        if(blockBelow0 != null && blockBelow0 instanceof TowerWallBlock) {
-            TowerWallBlock towerWallBlock0 = (TowerWallBlock) blockBelow0;
-            if(towerWallBlock0.getMossState() == MossState.BARELY_MOSSY || towerWallBlock0.getMossState() == MossState.MOSSY) {
-                useStaticTexture("tower_wall/tower_wall_1.png", "tower_wall/tower_wall_2.png");
-                mossState = MossState.REGULAR;
-                return;
-            }
-        }
-
-        useStaticTexture("tower_wall/tower_wall_1.png", "tower_wall/tower_wall_2.png");
+    @Override
+    void applyVariant(int variant) {
+        mossState = MOSS_STATES[Math.min(variant / 2, MOSS_STATES.length - 1)];
+        useStaticTexture(TEXTURES[mossState.ordinal()][variant % 2]);
     }
 
     @Override
@@ -71,6 +56,11 @@ public class TowerWallBlock extends Block {
         return true;
     }
 
+    @Override
+    public boolean isSolid() {
+        return true;
+    }
+
     @Override
     public Shape getShape() {
         PolygonShape shape = new PolygonShape();
@@ -0,0 +1,54 @@
+package sk.accerek.hamlet.world.generation;
+
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.base.ChunkProvider;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Puts a storage provider in front of a generator. Chunks the storage {@link ChunkProvider#exists(int, int) has}
+ * are loaded from it, everything else is generated, and all chunks are saved to the storage. A generated chunk
+ * that was changed is therefore loaded from the storage from then on.
+ * <p>
+ * Both providers should be created with the same seed, so generated and stored chunks pick variants alike.
+ */
+public class LayeredChunkProvider implements ChunkProvider {
+    private final ChunkProvider storage;
+    private final ChunkProvider generator;
+
+    public LayeredChunkProvider(ChunkProvider storage, ChunkProvider generator) {
+        this.storage = storage;
+        this.generator = generator;
+    }
+
+    @Override
+    public Optional<Chunk> provide(int x, int y) {
+        if(storage.exists(x, y)) {
+            return storage.provide(x, y);
+        }
+
+        return generator.provide(x, y);
+    }
+
+    @Override
+    public void unload(Chunk chunk) throws IOException {
+        storage.unload(chunk);
+    }
+
+    @Override
+    public boolean exists(int x, int y) {
+        return storage.exists(x, y) || generator.exists(x, y);
+    }
+
+    @Override
+    public boolean isWritable() {
+        return storage.isWritable();
+    }
+
+    @Override
+    public void dispose() {
+        storage.dispose();
+        generator.dispose();
+    }
+}
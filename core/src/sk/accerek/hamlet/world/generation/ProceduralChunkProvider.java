@@ -0,0 +1,156 @@
+package sk.accerek.hamlet.world.generation;
+
+import lombok.Getter;
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.base.ChunkProvider;
+import sk.accerek.hamlet.world.base.PositionalHash;
+import sk.accerek.hamlet.world.block.BlockType;
+import sk.accerek.hamlet.world.tile.TileType;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Generates chunks from the world's seed: grass with rocky floor where layered noise says so, and towers made of
+ * {@link BlockType#TOWER_WALL} blocks. Every chunk only depends on the seed and its own position, never on other
+ * chunks having been generated, so any number of them can be generated at the same time and in any order.
+ * <p>
+ * Nothing is saved here. Put a storage provider in front of this one with {@link LayeredChunkProvider} to keep
+ * changes to generated chunks.
+ */
+public class ProceduralChunkProvider implements ChunkProvider {
+    // Salts of the different random choices, kept clear of the ones chunks and blocks pick variants with
+    private static final int TERRAIN_SALT = 1000;
+    private static final int PATCH_SALT = 1100;
+    private static final int TOWER_SALT = 1200;
+    private static final int TOWER_RADIUS_SALT = 1201;
+    private static final int TOWER_X_SALT = 1202;
+    private static final int TOWER_Y_SALT = 1203;
+
+    private static final float TERRAIN_SCALE = 48;
+    private static final int TERRAIN_OCTAVES = 3;
+    private static final float ROCK_THRESHOLD = .62f;
+    private static final float PATCH_SCALE = 5;
+    private static final float PATCH_THRESHOLD = .82f;
+
+    // Towers are placed on a grid of cells, at most one per cell and always fully inside it
+    private static final int TOWER_CELL_SIZE = Chunk.CHUNK_SIZE * 2;
+    private static final int TOWER_CHANCE = 30;
+    private static final int MIN_TOWER_RADIUS = 3;
+    private static final int MAX_TOWER_RADIUS = 5;
+
+    private final @Getter long seed;
+
+    public ProceduralChunkProvider(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public Optional<Chunk> provide(int x, int y) {
+        return Optional.of(generate(x, y));
+    }
+
+    /**
+     * Generated chunks aren't saved, they come out the same the next time they're generated.
+     */
+    @Override
+    public void unload(Chunk chunk) {
+
+    }
+
+    @Override
+    public boolean isWritable() {
+        return false;
+    }
+
+    public Chunk generate(int chunkX, int chunkY) {
+        Chunk chunk = new Chunk(chunkX, chunkY, seed);
+        int originX = chunkX << Chunk.BIT_SIZE;
+        int originY = chunkY << Chunk.BIT_SIZE;
+
+        for(int x = 0; x < Chunk.CHUNK_SIZE; x++) {
+            for(int y = 0; y < Chunk.CHUNK_SIZE; y++) {
+                chunk.setTile(getTerrain(originX + x, originY + y), x, y);
+            }
+        }
+
+        placeTower(chunk, originX, originY);
+
+        // Only chunks changed after generation have to be saved
+        chunk.markSaved(chunk.getModificationCount());
+
+        return chunk;
+    }
+
+    /**
+     * Generates every chunk of the rectangle (inclusive, in chunk coordinates) on the pool.
+     */
+    public List<Chunk> generate(int minChunkX, int minChunkY, int maxChunkX, int maxChunkY, ForkJoinPool pool) {
+        int width = maxChunkX - minChunkX + 1;
+        int count = width * (maxChunkY - minChunkY + 1);
+        if(count <= 0) {
+            throw new IllegalArgumentException("Empty rectangle: " + minChunkX + ", " + minChunkY + " to " + maxChunkX + ", " + maxChunkY);
+        }
+
+        return pool.submit(() -> IntStream.range(0, count)
+                .parallel()
+                .mapToObj(i -> generate(minChunkX + i % width, minChunkY + i / width))
+                .collect(Collectors.toList())).join();
+    }
+
+    public TileType getTerrain(int x, int y) {
+        if(ValueNoise.fractal(seed, x, y, TERRAIN_SALT, TERRAIN_SCALE, TERRAIN_OCTAVES) > ROCK_THRESHOLD) {
+            return TileType.ROCKY_FLOOR;
+        }
+
+        // Small patches of rock scattered over the grass
+        if(ValueNoise.sample(seed, x, y, PATCH_SALT, PATCH_SCALE) > PATCH_THRESHOLD) {
+            return TileType.ROCKY_FLOOR;
+        }
+
+        return TileType.GRASS;
+    }
+
+    /**
+     * Places the part of the tower of the cell the chunk is in, if the cell has one. A tower is a ring of wall
+     * blocks on rocky floor, with a gap in the bottom of the ring as its door.
+     */
+    private void placeTower(Chunk chunk, int originX, int originY) {
+        int cellX = Math.floorDiv(originX, TOWER_CELL_SIZE);
+        int cellY = Math.floorDiv(originY, TOWER_CELL_SIZE);
+        if(PositionalHash.pick(seed, cellX, cellY, TOWER_SALT, 100) >= TOWER_CHANCE) {
+            return;
+        }
+
+        int radius = MIN_TOWER_RADIUS + PositionalHash.pick(seed, cellX, cellY, TOWER_RADIUS_SALT, MAX_TOWER_RADIUS - MIN_TOWER_RADIUS + 1);
+        int margin = radius + 1;
+        int centerX = cellX * TOWER_CELL_SIZE + margin + PositionalHash.pick(seed, cellX, cellY, TOWER_X_SALT, TOWER_CELL_SIZE - 2 * margin);
+        int centerY = cellY * TOWER_CELL_SIZE + margin + PositionalHash.pick(seed, cellX, cellY, TOWER_Y_SALT, TOWER_CELL_SIZE - 2 * margin);
+
+        float outer = (radius + .5f) * (radius + .5f);
+        float inner = (radius - .5f) * (radius - .5f);
+
+        // Tiles go first, and walls bottom to top, since wall blocks look at what's below them when created
+        for(int pass = 0; pass < 2; pass++) {
+            for(int x = 0; x < Chunk.CHUNK_SIZE; x++) {
+                for(int y = 0; y < Chunk.CHUNK_SIZE; y++) {
+                    int dx = originX + x - centerX;
+                    int dy = originY + y - centerY;
+                    int distance = dx * dx + dy * dy;
+                    if(distance > outer) {
+                        continue;
+                    }
+
+                    if(pass == 0) {
+                        chunk.setTile(TileType.ROCKY_FLOOR, x, y);
+                    } else if(distance >= inner && !(dx == 0 && dy < 0)) {
+                        chunk.setBlock(BlockType.TOWER_WALL, x, y);
+                    }
+                }
+            }
+        }
+    }
+}
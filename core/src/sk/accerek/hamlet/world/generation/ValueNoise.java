@@ -0,0 +1,61 @@
+package sk.accerek.hamlet.world.generation;
+
+import sk.accerek.hamlet.world.base.PositionalHash;
+
+/**
+ * Smooth noise built from {@link PositionalHash} values on an integer lattice. Like the hash it keeps no state,
+ * so any position can be sampled from any thread and always gives the same value for the same seed.
+ */
+public final class ValueNoise {
+    private ValueNoise() { }
+
+    /**
+     * @return a value from 0 to 1, changing smoothly over roughly {@code scale} units
+     */
+    public static float sample(long seed, float x, float y, int salt, float scale) {
+        x /= scale;
+        y /= scale;
+
+        int cellX = (int) Math.floor(x);
+        int cellY = (int) Math.floor(y);
+        float fractionX = smooth(x - cellX);
+        float fractionY = smooth(y - cellY);
+
+        float bottom = lerp(lattice(seed, cellX, cellY, salt), lattice(seed, cellX + 1, cellY, salt), fractionX);
+        float top = lerp(lattice(seed, cellX, cellY + 1, salt), lattice(seed, cellX + 1, cellY + 1, salt), fractionX);
+        return lerp(bottom, top, fractionY);
+    }
+
+    /**
+     * Sums {@code octaves} layers of noise, each at half the scale and half the weight of the previous one, so
+     * large features get smaller details on top of them.
+     *
+     * @return a value from 0 to 1
+     */
+    public static float fractal(long seed, float x, float y, int salt, float scale, int octaves) {
+        float sum = 0;
+        float weight = 1;
+        float totalWeight = 0;
+
+        for(int octave = 0; octave < octaves; octave++) {
+            sum += sample(seed, x, y, salt + octave, scale) * weight;
+            totalWeight += weight;
+            scale /= 2;
+            weight /= 2;
+        }
+
+        return sum / totalWeight;
+    }
+
+    private static float lattice(long seed, int x, int y, int salt) {
+        return (PositionalHash.hash(seed, x, y, salt) >>> 8) / (float) (1 << 24);
+    }
+
+    private static float smooth(float t) {
+        return t * t * (3 - 2 * t);
+    }
+
+    private static float lerp(float from, float to, float t) {
+        return from + (to - from) * t;
+    }
+}
@@ -0,0 +1,36 @@
+package sk.accerek.hamlet.world.lighting;
+
+import box2dLight.PointLight;
+import box2dLight.RayHandler;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.math.MathUtils;
+import lombok.Getter;
+
+/**
+ * A {@link PointLight} whose number of rays can be lowered at runtime, down from the number it was created with.
+ * Its mesh is allocated for the full number of rays, so it can always be scaled back up again.
+ */
+public class AdaptivePointLight extends PointLight {
+    private static final int MIN_RAYS = 16;
+
+    private final @Getter int maxRays;
+
+    public AdaptivePointLight(RayHandler rayHandler, int rays, Color color, float distance, float x, float y) {
+        super(rayHandler, rays, color, distance, x, y);
+        this.maxRays = rays;
+    }
+
+    /**
+     * @param scale the fraction of the light's full number of rays to cast, from 0 to 1
+     */
+    public void setRayScale(float scale) {
+        int rays = MathUtils.clamp(MathUtils.round(maxRays * scale), Math.min(MIN_RAYS, maxRays), maxRays);
+        if(rays == rayNum) {
+            return;
+        }
+
+        setRayNum(rays);
+        // Marks the light as dirty, so its end points are placed for the new number of rays on the next update
+        setDistance(getDistance());
+    }
+}
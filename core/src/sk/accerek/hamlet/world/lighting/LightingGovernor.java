@@ -0,0 +1,221 @@
+package sk.accerek.hamlet.world.lighting;
+
+import box2dLight.RayHandler;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Array;
+import lombok.Getter;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Trades dynamic lighting quality for frame time. Frame times are averaged over a short window; while they're over
+ * the target, quality is stepped down one notch per window: blur passes first, then the rays of each
+ * {@link AdaptivePointLight}, then the light map's resolution. Once frames are comfortably within the target for
+ * long enough, the same notches are stepped back up in reverse order.
+ * <p>
+ * A step up which pushes frames back over the target is reverted, and the governor waits twice as long before
+ * trying again, so it settles instead of flickering between two levels.
+ */
+public class LightingGovernor {
+    // Frames are averaged over this many seconds before deciding on a step
+    private static final float WINDOW = .5f;
+    private static final float MAX_UPGRADE_DELAY = 30f;
+
+    // Quality drops once frames take this many times the target, and may rise again while they stay under the second
+    private static final float DOWNGRADE_THRESHOLD = 1.15f;
+    private static final float UPGRADE_THRESHOLD = 1.05f;
+
+    private static final float RAY_SCALE_STEP = .25f;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final RayHandler rayHandler;
+    private final Array<AdaptivePointLight> lights = new Array<>();
+
+    private final float targetFrameTime;
+    private final int minBlurPasses;
+    private final int maxBlurPasses;
+    private final int minLightMapDivisor;
+    private final int maxLightMapDivisor;
+    private final float minRayScale;
+    private final float baseUpgradeDelay;
+
+    private @Getter int blurPasses;
+    private @Getter int lightMapDivisor;
+    private @Getter float rayScale = 1f;
+    private @Getter float averageFrameTime = 0;
+    private @Getter @Setter boolean enabled = true;
+
+    private int lightMapWidth = -1;
+    private int lightMapHeight = -1;
+
+    private float windowTime = 0;
+    private int windowFrames = 0;
+    private float timeWithinTarget = 0;
+    private float upgradeDelay;
+    private boolean justUpgraded = false;
+
+    /**
+     * @param minLightMapDivisor the light map is at least the screen's size divided by this, and the divisor is
+     *                           doubled on each step down up to {@code maxLightMapDivisor}
+     * @param minRayScale        the smallest fraction of each light's rays to cast
+     * @param upgradeDelay       seconds frames have to stay within the target before quality is stepped up
+     */
+    public LightingGovernor(RayHandler rayHandler, float targetFrameTime, int minBlurPasses, int maxBlurPasses,
+                            int minLightMapDivisor, int maxLightMapDivisor, float minRayScale, float upgradeDelay) {
+        this.rayHandler = rayHandler;
+        this.targetFrameTime = targetFrameTime;
+        this.minBlurPasses = minBlurPasses;
+        this.maxBlurPasses = maxBlurPasses;
+        this.minLightMapDivisor = minLightMapDivisor;
+        this.maxLightMapDivisor = maxLightMapDivisor;
+        this.minRayScale = minRayScale;
+        this.baseUpgradeDelay = upgradeDelay;
+        this.upgradeDelay = upgradeDelay;
+
+        this.blurPasses = maxBlurPasses;
+        this.lightMapDivisor = minLightMapDivisor;
+
+        apply();
+    }
+
+    public void addLight(AdaptivePointLight light) {
+        lights.add(light);
+        light.setRayScale(rayScale);
+    }
+
+    public void removeLight(AdaptivePointLight light) {
+        lights.removeValue(light, true);
+    }
+
+    public int getLightMapWidth() {
+        return lightMapWidth;
+    }
+
+    public int getLightMapHeight() {
+        return lightMapHeight;
+    }
+
+    /**
+     * Called once per rendered frame with the frame's duration, before the lights are rendered.
+     */
+    public void update(float frameTime) {
+        if(!enabled) {
+            resizeLightMap();
+            return;
+        }
+
+        windowTime += frameTime;
+        windowFrames++;
+
+        if(windowTime < WINDOW) {
+            // The screen may have been resized since the light map was created
+            resizeLightMap();
+            return;
+        }
+
+        averageFrameTime = windowTime / windowFrames;
+        windowTime = 0;
+        windowFrames = 0;
+
+        if(averageFrameTime > targetFrameTime * DOWNGRADE_THRESHOLD) {
+            if(justUpgraded) {
+                upgradeDelay = Math.min(upgradeDelay * 2, MAX_UPGRADE_DELAY);
+            }
+
+            timeWithinTarget = 0;
+            justUpgraded = false;
+            if(stepDown()) {
+                apply();
+                logger.debug("Lowered lighting quality at {} ms per frame: {}", averageFrameTime * 1000, this);
+            }
+            return;
+        }
+
+        if(justUpgraded) {
+            // The last step up held for a whole window
+            upgradeDelay = baseUpgradeDelay;
+            justUpgraded = false;
+        }
+
+        if(averageFrameTime > targetFrameTime * UPGRADE_THRESHOLD) {
+            timeWithinTarget = 0;
+            return;
+        }
+
+        timeWithinTarget += WINDOW;
+        if(timeWithinTarget >= upgradeDelay && stepUp()) {
+            timeWithinTarget = 0;
+            justUpgraded = true;
+            apply();
+            logger.debug("Raised lighting quality at {} ms per frame: {}", averageFrameTime * 1000, this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return blurPasses + " blur passes, " + lightMapWidth + "x" + lightMapHeight + " light map, " + Math.round(rayScale * 100) + "% rays";
+    }
+
+    private boolean stepDown() {
+        if(blurPasses > minBlurPasses) {
+            blurPasses--;
+            return true;
+        }
+
+        if(rayScale > minRayScale) {
+            rayScale = Math.max(minRayScale, rayScale - RAY_SCALE_STEP);
+            return true;
+        }
+
+        if(lightMapDivisor < maxLightMapDivisor) {
+            lightMapDivisor = Math.min(maxLightMapDivisor, lightMapDivisor * 2);
+            return true;
+        }
+
+        return false;
+    }
+
+    private boolean stepUp() {
+        if(lightMapDivisor > minLightMapDivisor) {
+            lightMapDivisor = Math.max(minLightMapDivisor, lightMapDivisor / 2);
+            return true;
+        }
+
+        if(rayScale < 1f) {
+            rayScale = Math.min(1f, rayScale + RAY_SCALE_STEP);
+            return true;
+        }
+
+        if(blurPasses < maxBlurPasses) {
+            blurPasses++;
+            return true;
+        }
+
+        return false;
+    }
+
+    private void apply() {
+        rayHandler.setBlur(blurPasses > 0);
+        rayHandler.setBlurNum(Math.max(1, blurPasses));
+
+        for(AdaptivePointLight light : lights) {
+            light.setRayScale(rayScale);
+        }
+
+        resizeLightMap();
+    }
+
+    private void resizeLightMap() {
+        int width = Math.max(1, Gdx.graphics.getWidth() / lightMapDivisor);
+        int height = Math.max(1, Gdx.graphics.getHeight() / lightMapDivisor);
+        if(width == lightMapWidth && height == lightMapHeight) {
+            return;
+        }
+
+        rayHandler.resizeFBO(width, height);
+        lightMapWidth = width;
+        lightMapHeight = height;
+    }
+}
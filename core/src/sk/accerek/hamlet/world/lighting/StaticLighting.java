@@ -0,0 +1,330 @@
+package sk.accerek.hamlet.world.lighting;
+
+import box2dLight.Light;
+import box2dLight.PointLight;
+import box2dLight.RayHandler;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.LongMap;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.base.ChunkKey;
+import sk.accerek.hamlet.world.physics.ChunkColliders;
+
+import java.util.List;
+
+/**
+ * Renders lights which never move into per-chunk lightmap textures once, instead of re-casting their rays every
+ * frame. Static lights live in their own {@link RayHandler}, which is only updated while baking. A chunk's
+ * lightmap is baked the first time it's visible, and baked again only after the shadow casters of a chunk in range
+ * of one of its lights changed.
+ * <p>
+ * Every frame, the baked lightmaps of visible chunks are added on top of the dynamic lights' light map, which is
+ * then blended over the scene the same way {@link RayHandler} does it with diffuse lighting.
+ */
+public class StaticLighting implements Disposable {
+    // Each chunk is baked with a margin around it, so the blur doesn't leave seams at chunk borders
+    private static final float BAKE_MARGIN = 0.125f;
+
+    private static final String COMPOSITE_VERTEX_SHADER = "attribute vec4 " + ShaderProgram.POSITION_ATTRIBUTE + ";\n"
+            + "attribute vec2 " + ShaderProgram.TEXCOORD_ATTRIBUTE + "0;\n"
+            + "uniform mat4 u_projTrans;\n"
+            + "varying vec2 v_texCoords;\n"
+            + "void main() {\n"
+            + "    v_texCoords = " + ShaderProgram.TEXCOORD_ATTRIBUTE + "0;\n"
+            + "    gl_Position = u_projTrans * " + ShaderProgram.POSITION_ATTRIBUTE + ";\n"
+            + "}\n";
+    private static final String COMPOSITE_FRAGMENT_SHADER = "#ifdef GL_ES\n"
+            + "precision lowp float;\n"
+            + "#define MED mediump\n"
+            + "#else\n"
+            + "#define MED\n"
+            + "#endif\n"
+            + "varying MED vec2 v_texCoords;\n"
+            + "uniform sampler2D u_texture;\n"
+            + "uniform vec4 ambient;\n"
+            + "void main() {\n"
+            + "    gl_FragColor.rgb = ambient.rgb + texture2D(u_texture, v_texCoords).rgb;\n"
+            + "    gl_FragColor.a = 1.0;\n"
+            + "}\n";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final RayHandler bakeHandler;
+    private final ChunkColliders chunkColliders;
+    private final int resolution;
+    private final int bakesPerFrame;
+
+    private final Array<Light> lights = new Array<>();
+    private final LongMap<Lightmap> lightmaps = new LongMap<>();
+
+    private final SpriteBatch batch;
+    private final ShaderProgram compositeShader;
+    private final Matrix4 projection = new Matrix4();
+    private final Color ambientLight = new Color();
+
+    private @Getter int bakeCount = 0;
+
+    /**
+     * @param chunkColliders the chunk bodies casting shadows, which are activated for each bake
+     * @param resolution     the size of each chunk's lightmap, in pixels
+     * @param bakesPerFrame  the most chunks baked in a single frame, the rest are left for the following frames
+     */
+    public StaticLighting(World box2dWorld, ChunkColliders chunkColliders, int resolution, int bakesPerFrame) {
+        this.chunkColliders = chunkColliders;
+        this.resolution = resolution;
+        this.bakesPerFrame = bakesPerFrame;
+
+        int bakeSize = Math.round(resolution * (1 + 2 * BAKE_MARGIN));
+        this.bakeHandler = new RayHandler(box2dWorld, bakeSize, bakeSize);
+        this.bakeHandler.setLightMapRendering(false);
+        this.bakeHandler.setAmbientLight(0, 0, 0, 0);
+        this.bakeHandler.setCulling(true);
+
+        this.batch = new SpriteBatch(8);
+        this.compositeShader = new ShaderProgram(COMPOSITE_VERTEX_SHADER, COMPOSITE_FRAGMENT_SHADER);
+        if(!compositeShader.isCompiled()) {
+            logger.error("Failed to compile the lightmap shader: {}", compositeShader.getLog());
+        }
+    }
+
+    public void setShadows(boolean shadows) {
+        bakeHandler.setShadows(shadows);
+        invalidateAll();
+    }
+
+    public void setBlur(boolean blur, int blurNum) {
+        bakeHandler.setBlur(blur);
+        bakeHandler.setBlurNum(blurNum);
+        invalidateAll();
+    }
+
+    public void setAmbientLight(float r, float g, float b, float a) {
+        ambientLight.set(r, g, b, a);
+    }
+
+    public PointLight addPointLight(int rays, Color color, float distance, float x, float y) {
+        PointLight light = new PointLight(bakeHandler, rays, color, distance, x, y);
+        lights.add(light);
+        invalidateAround(light);
+
+        return light;
+    }
+
+    public void removeLight(Light light) {
+        if(!lights.removeValue(light, true)) {
+            return;
+        }
+
+        invalidateAround(light);
+        light.remove();
+    }
+
+    public int getLightCount() {
+        return lights.size;
+    }
+
+    public int getLightmapCount() {
+        return lightmaps.size;
+    }
+
+    /**
+     * Marks every chunk lit by a static light reaching the given chunk for baking, as the shadow casters in it
+     * changed.
+     */
+    public void invalidate(int chunkX, int chunkY) {
+        for(Light light : lights) {
+            if(reaches(light, chunkX, chunkY)) {
+                invalidateAround(light);
+            }
+        }
+    }
+
+    /**
+     * Bakes the lightmaps of the given chunks which need it, within the per-frame budget. Casts rays into the
+     * Box2D world, so the caller has to hold the simulation's lock.
+     */
+    public void bake(List<Chunk> chunks) {
+        if(lights.size == 0) {
+            return;
+        }
+
+        int baked = 0;
+        for(int i = 0; i < chunks.size() && baked < bakesPerFrame; i++) {
+            Chunk chunk = chunks.get(i);
+
+            Lightmap lightmap = lightmaps.get(chunk.getKey());
+            if(lightmap != null && !lightmap.dirty) {
+                continue;
+            }
+
+            if(!isLit(chunk.getChunkX(), chunk.getChunkY())) {
+                if(lightmap != null) {
+                    lightmaps.remove(chunk.getKey());
+                    lightmap.frameBuffer.dispose();
+                }
+                continue;
+            }
+
+            if(lightmap == null) {
+                lightmap = new Lightmap(new FrameBuffer(Pixmap.Format.RGBA8888, resolution, resolution, false));
+                lightmap.frameBuffer.getColorBufferTexture().setFilter(Texture.TextureFilter.Linear, Texture.TextureFilter.Linear);
+                lightmaps.put(chunk.getKey(), lightmap);
+            }
+
+            bake(chunk, lightmap);
+            baked++;
+        }
+    }
+
+    /**
+     * Adds the static lights' contribution, as of each chunk's latest bake, to the dynamic lights' light map, then
+     * blends the result over the scene. {@code rayHandler} has to be rendered with light map rendering disabled
+     * beforehand.
+     */
+    public void composite(RayHandler rayHandler, Matrix4 combined, List<Chunk> chunks) {
+        FrameBuffer lightMapBuffer = rayHandler.getLightMapBuffer();
+
+        lightMapBuffer.begin();
+        batch.setShader(null);
+        batch.setProjectionMatrix(combined);
+        batch.setBlendFunction(GL20.GL_ONE, GL20.GL_ONE);
+        batch.begin();
+        for(int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            Lightmap lightmap = lightmaps.get(chunk.getKey());
+            if(lightmap == null || !lightmap.baked) {
+                continue;
+            }
+
+            batch.draw(lightmap.frameBuffer.getColorBufferTexture(),
+                    chunk.getChunkX() * Chunk.CHUNK_PIXEL_SIZE, chunk.getChunkY() * Chunk.CHUNK_PIXEL_SIZE,
+                    Chunk.CHUNK_PIXEL_SIZE, Chunk.CHUNK_PIXEL_SIZE, 0, 0, 1, 1);
+        }
+        batch.end();
+        lightMapBuffer.end();
+
+        batch.setShader(compositeShader);
+        batch.setProjectionMatrix(projection.idt());
+        batch.setBlendFunction(GL20.GL_DST_COLOR, GL20.GL_ZERO);
+        batch.begin();
+        compositeShader.setUniformf("ambient", ambientLight);
+        batch.draw(lightMapBuffer.getColorBufferTexture(), -1, -1, 2, 2, 0, 0, 1, 1);
+        batch.end();
+    }
+
+    public void release(Chunk chunk) {
+        Lightmap lightmap = lightmaps.remove(chunk.getKey());
+        if(lightmap != null) {
+            lightmap.frameBuffer.dispose();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        for(Lightmap lightmap : lightmaps.values()) {
+            lightmap.frameBuffer.dispose();
+        }
+        lightmaps.clear();
+        lights.clear();
+
+        bakeHandler.dispose();
+        batch.dispose();
+        compositeShader.dispose();
+    }
+
+    private void bake(Chunk chunk, Lightmap lightmap) {
+        float margin = Chunk.CHUNK_PIXEL_SIZE * BAKE_MARGIN;
+        float size = Chunk.CHUNK_PIXEL_SIZE + 2 * margin;
+        float left = chunk.getChunkX() * Chunk.CHUNK_PIXEL_SIZE - margin;
+        float bottom = chunk.getChunkY() * Chunk.CHUNK_PIXEL_SIZE - margin;
+
+        // Only the bodies near the camera are kept active, but the lights' rays have to hit every caster they reach
+        for(Light light : lights) {
+            if(reaches(light, chunk.getChunkX(), chunk.getChunkY())) {
+                chunkColliders.activateWithin(light.getX(), light.getY(), light.getDistance());
+            }
+        }
+
+        projection.setToOrtho2D(left, bottom, size, size);
+        bakeHandler.setCombinedMatrix(projection, left + size / 2, bottom + size / 2, size, size);
+        bakeHandler.update();
+        bakeHandler.render();
+
+        chunkColliders.restoreActivation();
+
+        float inset = BAKE_MARGIN / (1 + 2 * BAKE_MARGIN);
+        lightmap.frameBuffer.begin();
+        Gdx.gl.glClearColor(0, 0, 0, 0);
+        Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
+        batch.setShader(null);
+        batch.setProjectionMatrix(projection.idt());
+        batch.disableBlending();
+        batch.begin();
+        batch.draw(bakeHandler.getLightMapTexture(), -1, -1, 2, 2, inset, inset, 1 - inset, 1 - inset);
+        batch.end();
+        batch.enableBlending();
+        lightmap.frameBuffer.end();
+
+        lightmap.dirty = false;
+        lightmap.baked = true;
+        bakeCount++;
+    }
+
+    private void invalidateAll() {
+        for(Lightmap lightmap : lightmaps.values()) {
+            lightmap.dirty = true;
+        }
+    }
+
+    private void invalidateAround(Light light) {
+        for(LongMap.Entry<Lightmap> entry : lightmaps.entries()) {
+            if(reaches(light, ChunkKey.getX(entry.key), ChunkKey.getY(entry.key))) {
+                entry.value.dirty = true;
+            }
+        }
+    }
+
+    private boolean isLit(int chunkX, int chunkY) {
+        for(Light light : lights) {
+            if(reaches(light, chunkX, chunkY)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean reaches(Light light, int chunkX, int chunkY) {
+        float left = chunkX * Chunk.CHUNK_PIXEL_SIZE;
+        float bottom = chunkY * Chunk.CHUNK_PIXEL_SIZE;
+        float closestX = Math.max(left, Math.min(light.getX(), left + Chunk.CHUNK_PIXEL_SIZE));
+        float closestY = Math.max(bottom, Math.min(light.getY(), bottom + Chunk.CHUNK_PIXEL_SIZE));
+        float dx = light.getX() - closestX;
+        float dy = light.getY() - closestY;
+
+        return dx * dx + dy * dy <= light.getDistance() * light.getDistance();
+    }
+
+    private static class Lightmap {
+        private final FrameBuffer frameBuffer;
+        private boolean dirty = true;
+        private boolean baked = false;
+
+        private Lightmap(FrameBuffer frameBuffer) {
+            this.frameBuffer = frameBuffer;
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package sk.accerek.hamlet.world.physics;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.FixtureDef;
+import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.physics.box2d.Shape;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.base.ChunkKey;
+import sk.accerek.hamlet.world.base.ChunkRegistry;
+import sk.accerek.hamlet.world.block.Block;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Owns the Box2D colliders of loaded chunks' blocks, using a single static body per chunk. Neighbouring
+ * {@link Block#isSolid() solid} blocks are merged into as few rectangles as possible, so a wall made of hundreds
+ * of blocks ends up as a handful of fixtures, both for the broadphase and for the lights casting shadows.
+ * <p>
+ * Chunks which were just loaded or whose blocks changed are only marked as dirty, and are built together on the
+ * next {@link #update()}. Their bodies are destroyed when they're unloaded, and deactivated while they're far away
+ * from the camera and from every dynamic body.
+ */
+public class ChunkColliders implements Disposable {
+    private static final int CELLS = Chunk.CHUNK_SIZE * Chunk.CHUNK_SIZE;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final World box2dWorld;
+    private final ChunkRegistry loadedChunks;
+
+    private final LongMap<Body> bodies = new LongMap<>();
+    private final LongMap<Chunk> dirtyChunks = new LongMap<>();
+    private @Getter int fixtureCount = 0;
+    // Bodies activated by the last updateActivation, the other map is reused for the next one
+    private LongMap<Body> activeBodies = new LongMap<>();
+    private LongMap<Body> nextActiveBodies = new LongMap<>();
+    private Consumer<Chunk> changeListener = chunk -> {};
+
+    private final LongArray focusChunks = new LongArray();
+    private final Array<Body> worldBodies = new Array<>();
+    private final List<Chunk> nearbyChunks = new ArrayList<>();
+    // Bodies activated by activateWithin, which restoreActivation deactivates again
+    private final Array<Body> temporarilyActive = new Array<>();
+
+    private final boolean[] solid = new boolean[CELLS];
+    private final boolean[] covered = new boolean[CELLS];
+    private final int[] rectangles = new int[CELLS * 4];
+    private final PolygonShape boxShape = new PolygonShape();
+    private final FixtureDef fixtureDef = new FixtureDef();
+    private final BodyDef bodyDef = new BodyDef();
+    private final Vector2 centre = new Vector2();
+    private final Vector2 vertex = new Vector2();
+
+    public ChunkColliders(World box2dWorld, ChunkRegistry loadedChunks) {
+        this.box2dWorld = box2dWorld;
+        this.loadedChunks = loadedChunks;
+
+        bodyDef.type = BodyDef.BodyType.StaticBody;
+        bodyDef.fixedRotation = true;
+        // Bodies start out inactive, updateActivation activates the ones near enough
+        bodyDef.active = false;
+
+        fixtureDef.density = 1;
+        fixtureDef.friction = 1;
+        fixtureDef.restitution = 0;
+        fixtureDef.isSensor = false;
+    }
+
+    /**
+     * Called after a chunk's colliders were rebuilt, unless it had none before and still has none.
+     */
+    public void setChangeListener(Consumer<Chunk> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    public void markDirty(Chunk chunk) {
+        dirtyChunks.put(chunk.getKey(), chunk);
+    }
+
+    /**
+     * Rebuilds the colliders of every chunk marked as dirty since the last update. Must not be called while the
+     * Box2D world is stepping.
+     */
+    public void update() {
+        if(dirtyChunks.size == 0) {
+            return;
+        }
+
+        for(Chunk chunk : dirtyChunks.values()) {
+            rebuild(chunk);
+        }
+
+        dirtyChunks.clear();
+    }
+
+    public void rebuild(Chunk chunk) {
+        Body body = bodies.get(chunk.getKey());
+        boolean hadColliders = body != null;
+        if(body != null) {
+            fixtureCount -= body.getFixtureList().size;
+            destroyFixtures(body);
+        }
+
+        Arrays.fill(solid, false);
+        boolean hasColliders = false;
+
+        Block[][] blocks = chunk.getBlocks();
+        for(int x = 0; x < Chunk.CHUNK_SIZE; x++) {
+            for(int y = 0; y < Chunk.CHUNK_SIZE; y++) {
+                Block block = blocks[x][y];
+                if(block == null || !block.hasPhysics()) {
+                    continue;
+                }
+
+                if(block.isSolid()) {
+                    solid[Chunk.index(x, y)] = true;
+                } else {
+                    body = ensureBody(chunk, body);
+                    addShape(body, block, x, y);
+                }
+
+                hasColliders = true;
+            }
+        }
+
+        if(!hasColliders) {
+            if(body != null) {
+                box2dWorld.destroyBody(body);
+                bodies.remove(chunk.getKey());
+                activeBodies.remove(chunk.getKey());
+            }
+
+            if(hadColliders) {
+                changeListener.accept(chunk);
+            }
+
+            return;
+        }
+
+        int count = mergeRectangles(solid, covered, rectangles);
+        if(count > 0) {
+            body = ensureBody(chunk, body);
+        }
+
+        float halfTile = Chunk.GRID_SIZE / 2f;
+        for(int i = 0; i < count; i++) {
+            int x = rectangles[i * 4];
+            int y = rectangles[i * 4 + 1];
+            int width = rectangles[i * 4 + 2];
+            int height = rectangles[i * 4 + 3];
+
+            centre.set(x * Chunk.GRID_SIZE + width * halfTile, y * Chunk.GRID_SIZE + height * halfTile);
+            boxShape.setAsBox(width * halfTile, height * halfTile, centre, 0);
+
+            fixtureDef.shape = boxShape;
+            body.createFixture(fixtureDef);
+            fixtureCount++;
+        }
+
+        changeListener.accept(chunk);
+    }
+
+    /**
+     * Activates the bodies of chunks within the radius of the focus chunk or of the chunk of any dynamic body, and
+     * deactivates the ones which were active but aren't in range anymore. The chunks around each focus are queried
+     * from the loaded chunks' sectors, so the cost doesn't grow with the number of loaded chunks.
+     */
+    public void updateActivation(int focusX, int focusY, int radius) {
+        focusChunks.clear();
+        focusChunks.add(ChunkKey.pack(focusX, focusY));
+
+        box2dWorld.getBodies(worldBodies);
+        for(Body body : worldBodies) {
+            // Chunk bodies are told apart by their user data, as asking Box2D for the type of each is a native call
+            if(body.getUserData() instanceof Chunk) {
+                continue;
+            }
+
+            if(body.getType() == BodyDef.BodyType.DynamicBody && body.isActive()) {
+                Vector2 position = body.getPosition();
+                focusChunks.add(ChunkKey.pack(MathUtils.floor(position.x / Chunk.CHUNK_PIXEL_SIZE), MathUtils.floor(position.y / Chunk.CHUNK_PIXEL_SIZE)));
+            }
+        }
+        worldBodies.clear();
+
+        // Bodies sharing a chunk only need to be looked at once
+        focusChunks.sort();
+
+        LongMap<Body> active = nextActiveBodies;
+        active.clear();
+        for(int i = 0; i < focusChunks.size; i++) {
+            if(i > 0 && focusChunks.get(i) == focusChunks.get(i - 1)) {
+                continue;
+            }
+
+            int chunkX = ChunkKey.getX(focusChunks.get(i));
+            int chunkY = ChunkKey.getY(focusChunks.get(i));
+
+            nearbyChunks.clear();
+            synchronized (loadedChunks) {
+                loadedChunks.query(chunkX - radius, chunkY - radius, chunkX + radius, chunkY + radius, nearbyChunks);
+            }
+
+            for(int j = 0; j < nearbyChunks.size(); j++) {
+                Chunk chunk = nearbyChunks.get(j);
+                int dx = chunk.getChunkX() - chunkX;
+                int dy = chunk.getChunkY() - chunkY;
+                if(dx * dx + dy * dy > radius * radius) {
+                    continue;
+                }
+
+                Body body = bodies.get(chunk.getKey());
+                if(body != null) {
+                    active.put(chunk.getKey(), body);
+                }
+            }
+        }
+        nearbyChunks.clear();
+
+        for(LongMap.Entry<Body> entry : activeBodies.entries()) {
+            if(!active.containsKey(entry.key) && bodies.get(entry.key) == entry.value) {
+                entry.value.setActive(false);
+            }
+        }
+
+        for(Body body : active.values()) {
+            if(!body.isActive()) {
+                body.setActive(true);
+            }
+        }
+
+        nextActiveBodies = activeBodies;
+        activeBodies = active;
+    }
+
+    /**
+     * Activates the bodies of the loaded chunks the circle (in pixels) reaches, on top of the ones kept active
+     * by {@link #updateActivation(int, int, int)}, until {@link #restoreActivation()} is called. Box2D ray casts
+     * skip inactive bodies, so this is needed before casting rays further than the physics radius.
+     */
+    public void activateWithin(float x, float y, float radius) {
+        nearbyChunks.clear();
+        synchronized (loadedChunks) {
+            loadedChunks.query(MathUtils.floor((x - radius) / Chunk.CHUNK_PIXEL_SIZE), MathUtils.floor((y - radius) / Chunk.CHUNK_PIXEL_SIZE),
+                    MathUtils.floor((x + radius) / Chunk.CHUNK_PIXEL_SIZE), MathUtils.floor((y + radius) / Chunk.CHUNK_PIXEL_SIZE), nearbyChunks);
+        }
+
+        for(int i = 0; i < nearbyChunks.size(); i++) {
+            Body body = bodies.get(nearbyChunks.get(i).getKey());
+            if(body != null && !body.isActive()) {
+                body.setActive(true);
+                temporarilyActive.add(body);
+            }
+        }
+        nearbyChunks.clear();
+    }
+
+    /**
+     * Deactivates the bodies activated by {@link #activateWithin(float, float, float)} again.
+     */
+    public void restoreActivation() {
+        for(Body body : temporarilyActive) {
+            body.setActive(false);
+        }
+
+        temporarilyActive.clear();
+    }
+
+    public int getActiveBodyCount() {
+        return activeBodies.size;
+    }
+
+    public void remove(Chunk chunk) {
+        dirtyChunks.remove(chunk.getKey());
+
+        Body body = bodies.remove(chunk.getKey());
+        activeBodies.remove(chunk.getKey());
+        if(body != null) {
+            fixtureCount -= body.getFixtureList().size;
+            box2dWorld.destroyBody(body);
+        }
+    }
+
+    public Body getBody(Chunk chunk) {
+        return bodies.get(chunk.getKey());
+    }
+
+    public int getBodyCount() {
+        return bodies.size;
+    }
+
+    @Override
+    public void dispose() {
+        for(Body body : bodies.values()) {
+            box2dWorld.destroyBody(body);
+        }
+
+        bodies.clear();
+        activeBodies.clear();
+        dirtyChunks.clear();
+        fixtureCount = 0;
+        boxShape.dispose();
+    }
+
+    /**
+     * Greedily covers the solid cells of a chunk with rectangles: starting from each uncovered solid cell, the
+     * rectangle is grown along x as far as possible, then along y for as long as whole rows fit.
+     *
+     * @param covered scratch space of the same size as {@code solid}, cleared before use
+     * @param rectangles receives x, y, width and height of each rectangle, in tiles
+     * @return the number of rectangles
+     */
+    public static int mergeRectangles(boolean[] solid, boolean[] covered, int[] rectangles) {
+        Arrays.fill(covered, false);
+        int count = 0;
+
+        for(int y = 0; y < Chunk.CHUNK_SIZE; y++) {
+            for(int x = 0; x < Chunk.CHUNK_SIZE; x++) {
+                if(!solid[Chunk.index(x, y)] || covered[Chunk.index(x, y)]) {
+                    continue;
+                }
+
+                int width = 1;
+                while(x + width < Chunk.CHUNK_SIZE && solid[Chunk.index(x + width, y)] && !covered[Chunk.index(x + width, y)]) {
+                    width++;
+                }
+
+                int height = 1;
+                grow:
+                while(y + height < Chunk.CHUNK_SIZE) {
+                    for(int dx = 0; dx < width; dx++) {
+                        int index = Chunk.index(x + dx, y + height);
+                        if(!solid[index] || covered[index]) {
+                            break grow;
+                        }
+                    }
+
+                    height++;
+                }
+
+                for(int dx = 0; dx < width; dx++) {
+                    for(int dy = 0; dy < height; dy++) {
+                        covered[Chunk.index(x + dx, y + dy)] = true;
+                    }
+                }
+
+                rectangles[count * 4] = x;
+                rectangles[count * 4 + 1] = y;
+                rectangles[count * 4 + 2] = width;
+                rectangles[count * 4 + 3] = height;
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private Body ensureBody(Chunk chunk, Body body) {
+        if(body != null) {
+            return body;
+        }
+
+        bodyDef.position.set(chunk.getChunkX() * Chunk.CHUNK_PIXEL_SIZE, chunk.getChunkY() * Chunk.CHUNK_PIXEL_SIZE);
+        body = box2dWorld.createBody(bodyDef);
+        body.setUserData(chunk);
+        bodies.put(chunk.getKey(), body);
+
+        return body;
+    }
+
+    /**
+     * Adds a block's own shape to the chunk's body. Polygon shapes are moved from the block's origin to its
+     * position in the chunk, anything else is added as-is.
+     */
+    private void addShape(Body body, Block block, int xInChunk, int yInChunk) {
+        Shape shape = block.getShape();
+        if(shape == null) {
+            return;
+        }
+
+        if(shape instanceof PolygonShape) {
+            PolygonShape polygon = (PolygonShape) shape;
+            Vector2[] vertices = new Vector2[polygon.getVertexCount()];
+            for(int i = 0; i < vertices.length; i++) {
+                polygon.getVertex(i, vertex);
+                vertices[i] = new Vector2(vertex.x + xInChunk * Chunk.GRID_SIZE, vertex.y + yInChunk * Chunk.GRID_SIZE);
+            }
+            polygon.set(vertices);
+        } else {
+            logger.warn("{} has a {}, which can't be moved into place in its chunk", block, shape.getType());
+        }
+
+        fixtureDef.shape = shape;
+        body.createFixture(fixtureDef);
+        fixtureCount++;
+
+        shape.dispose();
+    }
+
+    private void destroyFixtures(Body body) {
+        Array<Fixture> fixtures = new Array<>(body.getFixtureList());
+        for(Fixture fixture : fixtures) {
+            body.destroyFixture(fixture);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package sk.accerek.hamlet.world.render;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.SpriteCache;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.LongMap;
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.tile.TileType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the tile layer of recently drawn chunks baked into {@link SpriteCache} geometry, so drawing a chunk's
+ * tiles is a single cached draw instead of 256 batched sprites. A chunk is only re-baked after its
+ * {@link Chunk#getTileVersion() tile version} changed.
+ * <p>
+ * Each {@link SpriteCache} page is split into fixed slots of one chunk each. Every slot is defined with a full
+ * chunk's worth of sprites up front, which lets it be redefined with any tile layer later on. When every slot
+ * of every page is taken, the least recently drawn chunk gives up its slot.
+ */
+public class TileLayerCache implements Disposable {
+    private static final int SPRITES_PER_SLOT = Chunk.CHUNK_SIZE * Chunk.CHUNK_SIZE;
+    private static final int SLOTS_PER_PAGE = 8191 / SPRITES_PER_SLOT;
+    private static final float WHITE = Color.WHITE.toFloatBits();
+
+    private final int maxPages;
+    private final Texture placeholderTexture;
+
+    private final List<SpriteCache> pages = new ArrayList<>();
+    private final List<Slot> freeSlots = new ArrayList<>();
+    private final LongMap<Slot> slotsByChunk = new LongMap<>();
+
+    private long frame = 0;
+    private SpriteCache activePage = null;
+    private Matrix4 projection;
+
+    public TileLayerCache(int maxPages, Texture placeholderTexture) {
+        this.maxPages = maxPages;
+        this.placeholderTexture = placeholderTexture;
+    }
+
+    /**
+     * Bakes the chunk's tile layer if it isn't cached or changed since it was. Must be called before
+     * {@link #begin(Matrix4)}, as {@link SpriteCache}s can't be redefined while drawing.
+     */
+    public void prepare(Chunk chunk) {
+        Slot slot = slotsByChunk.get(chunk.getKey());
+        if(slot == null) {
+            slot = acquireSlot();
+            slot.chunkKey = chunk.getKey();
+            slot.bakedVersion = -1;
+            slotsByChunk.put(chunk.getKey(), slot);
+        }
+
+        slot.lastDrawn = frame;
+
+        if(slot.bakedVersion != chunk.getTileVersion()) {
+            bake(slot, chunk);
+        }
+    }
+
+    public void begin(Matrix4 projection) {
+        this.projection = projection;
+        this.activePage = null;
+    }
+
+    public void draw(Chunk chunk) {
+        Slot slot = slotsByChunk.get(chunk.getKey());
+        if(slot == null || slot.empty) {
+            return;
+        }
+
+        if(activePage != slot.page) {
+            if(activePage != null) {
+                activePage.end();
+            }
+
+            activePage = slot.page;
+            activePage.setProjectionMatrix(projection);
+            activePage.begin();
+        }
+
+        activePage.draw(slot.cacheId);
+    }
+
+    public void end() {
+        if(activePage != null) {
+            activePage.end();
+            activePage = null;
+        }
+
+        frame++;
+    }
+
+    public void release(Chunk chunk) {
+        Slot slot = slotsByChunk.remove(chunk.getKey());
+        if(slot != null) {
+            freeSlots.add(slot);
+        }
+    }
+
+    private void bake(Slot slot, Chunk chunk) {
+        short[] tileTypeIds = chunk.getTileTypeIds();
+        byte[] tileVariants = chunk.getTileVariants();
+        int pixelX = chunk.getChunkX() * Chunk.CHUNK_PIXEL_SIZE;
+        int pixelY = chunk.getChunkY() * Chunk.CHUNK_PIXEL_SIZE;
+
+        slot.page.beginCache(slot.cacheId);
+
+        // Grouped by region, so textures that didn't make it into the atlas get switched as rarely as possible.
+        int added = 0;
+        for(TileType type : TileType.values()) {
+            TextureRegion[] regions = type.getRegions();
+            for(int variant = 0; variant < regions.length; variant++) {
+                for(int i = 0; i < tileTypeIds.length; i++) {
+                    if(tileTypeIds[i] - 1 != type.getId() || tileVariants[i] != variant) {
+                        continue;
+                    }
+
+                    float x = pixelX + (i >> Chunk.BIT_SIZE) * Chunk.GRID_SIZE;
+                    float y = pixelY + (i & (Chunk.CHUNK_SIZE - 1)) * Chunk.GRID_SIZE;
+                    slot.page.add(regions[variant], x, y, Chunk.GRID_SIZE, Chunk.GRID_SIZE);
+                    added++;
+                }
+            }
+        }
+
+        slot.page.endCache();
+        slot.empty = added == 0;
+        slot.bakedVersion = chunk.getTileVersion();
+    }
+
+    private Slot acquireSlot() {
+        if(freeSlots.isEmpty() && pages.size() < maxPages) {
+            addPage();
+        }
+
+        if(!freeSlots.isEmpty()) {
+            return freeSlots.remove(freeSlots.size() - 1);
+        }
+
+        Slot leastRecentlyDrawn = null;
+        for(Slot slot : slotsByChunk.values()) {
+            if(leastRecentlyDrawn == null || slot.lastDrawn < leastRecentlyDrawn.lastDrawn) {
+                leastRecentlyDrawn = slot;
+            }
+        }
+
+        if(leastRecentlyDrawn == null || leastRecentlyDrawn.lastDrawn >= frame) {
+            // Everything cached is on screen this frame, so grow past the limit rather than thrash.
+            addPage();
+            return freeSlots.remove(freeSlots.size() - 1);
+        }
+
+        slotsByChunk.remove(leastRecentlyDrawn.chunkKey);
+        return leastRecentlyDrawn;
+    }
+
+    private void addPage() {
+        SpriteCache page = new SpriteCache(SLOTS_PER_PAGE * SPRITES_PER_SLOT, true);
+        pages.add(page);
+
+        for(int i = 0; i < SLOTS_PER_PAGE; i++) {
+            page.beginCache();
+            for(int j = 0; j < SPRITES_PER_SLOT; j++) {
+                page.add(placeholderTexture, 0, 0, 0, 0, 0, 1, 1, 0, WHITE);
+            }
+
+            freeSlots.add(new Slot(page, page.endCache()));
+        }
+    }
+
+    @Override
+    public void dispose() {
+        for(SpriteCache page : pages) {
+            page.dispose();
+        }
+
+        pages.clear();
+        freeSlots.clear();
+        slotsByChunk.clear();
+    }
+
+    private static class Slot {
+        private final SpriteCache page;
+        private final int cacheId;
+
+        private long chunkKey;
+        private int bakedVersion;
+        private long lastDrawn;
+        private boolean empty = true;
+
+        Slot(SpriteCache page, int cacheId) {
+            this.page = page;
+            this.cacheId = cacheId;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package sk.accerek.hamlet.world.render;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+import lombok.Getter;
+import sk.accerek.hamlet.world.base.Chunk;
+
+/**
+ * The rectangle of tiles, and of the chunks holding them, that the camera can see. It's computed once per frame
+ * from the corners of the camera's frustum, so visibility checks are plain integer comparisons afterwards.
+ * All bounds are inclusive.
+ */
+public class ViewBounds {
+    private @Getter int minTileX;
+    private @Getter int minTileY;
+    private @Getter int maxTileX;
+    private @Getter int maxTileY;
+
+    private @Getter int minChunkX;
+    private @Getter int minChunkY;
+    private @Getter int maxChunkX;
+    private @Getter int maxChunkY;
+
+    /**
+     * @param margin extra tiles to include below and left of the view, for sprites which are anchored to a tile
+     *               outside of it but are large enough to reach into it
+     */
+    public void update(Camera camera, int margin) {
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+
+        // The near plane's corners, which for the orthographic cameras used here cover the whole view
+        for(int i = 0; i < 4; i++) {
+            Vector3 corner = camera.frustum.planePoints[i];
+            minX = Math.min(minX, corner.x);
+            minY = Math.min(minY, corner.y);
+            maxX = Math.max(maxX, corner.x);
+            maxY = Math.max(maxY, corner.y);
+        }
+
+        minTileX = MathUtils.floor(minX / Chunk.GRID_SIZE) - margin;
+        minTileY = MathUtils.floor(minY / Chunk.GRID_SIZE) - margin;
+        maxTileX = MathUtils.floor(maxX / Chunk.GRID_SIZE);
+        maxTileY = MathUtils.floor(maxY / Chunk.GRID_SIZE);
+
+        minChunkX = minTileX >> Chunk.BIT_SIZE;
+        minChunkY = minTileY >> Chunk.BIT_SIZE;
+        maxChunkX = maxTileX >> Chunk.BIT_SIZE;
+        maxChunkY = maxTileY >> Chunk.BIT_SIZE;
+    }
+
+    public boolean containsTile(int tileX, int tileY) {
+        return tileX >= minTileX && tileX <= maxTileX && tileY >= minTileY && tileY <= maxTileY;
+    }
+
+    public boolean containsChunk(int chunkX, int chunkY) {
+        return chunkX >= minChunkX && chunkX <= maxChunkX && chunkY >= minChunkY && chunkY <= maxChunkY;
+    }
+}
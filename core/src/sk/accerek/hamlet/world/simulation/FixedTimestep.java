@@ -0,0 +1,62 @@
+package sk.accerek.hamlet.world.simulation;
+
+import lombok.Getter;
+
+/**
+ * Turns variable frame times into a whole number of fixed-length steps, carrying the remainder over to the next
+ * frame. At most {@code maxSteps} steps are taken per call; anything beyond that is dropped, so a slow frame
+ * makes the simulation fall behind once instead of making every following frame slower too.
+ */
+public class FixedTimestep {
+    private final @Getter float timeStep;
+    private final int maxSteps;
+    private final Runnable step;
+
+    private float accumulator = 0;
+    // Only written by the thread calling advance, but read from others for statistics
+    private volatile @Getter long stepCount = 0;
+    private volatile @Getter long droppedSteps = 0;
+
+    public FixedTimestep(float timeStep, int maxSteps, Runnable step) {
+        this.timeStep = timeStep;
+        this.maxSteps = Math.max(1, maxSteps);
+        this.step = step;
+    }
+
+    /**
+     * @return the number of steps taken
+     */
+    public int advance(float delta) {
+        accumulator += delta;
+
+        int steps = 0;
+        while(accumulator >= timeStep) {
+            if(steps == maxSteps) {
+                droppedSteps += (long) (accumulator / timeStep);
+                accumulator %= timeStep;
+                break;
+            }
+
+            step.run();
+            accumulator -= timeStep;
+            steps++;
+            stepCount++;
+        }
+
+        return steps;
+    }
+
+    /**
+     * How far the simulation is between its last and its next step, from 0 to 1.
+     */
+    public float getAlpha() {
+        return Math.min(1f, accumulator / timeStep);
+    }
+
+    /**
+     * Seconds until the next step is due.
+     */
+    public float getTimeUntilNextStep() {
+        return Math.max(0f, timeStep - accumulator);
+    }
+}
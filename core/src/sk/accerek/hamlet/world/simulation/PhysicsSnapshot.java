@@ -0,0 +1,66 @@
+package sk.accerek.hamlet.world.simulation;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import sk.accerek.hamlet.world.base.Chunk;
+
+import java.util.Arrays;
+
+/**
+ * The positions and angles of every dynamic body after one simulation step, so they can be rendered without
+ * touching the Box2D world, which may be stepping on another thread at the same time. Snapshots are reused from
+ * step to step, so they only allocate when the number of dynamic bodies grows.
+ */
+public class PhysicsSnapshot {
+    private final ObjectIntMap<Body> indices = new ObjectIntMap<>();
+    private float[] transforms = new float[0];
+
+    /**
+     * Replaces the snapshot's contents. Must be called by the thread stepping the world, with the bodies of the
+     * world, while no one else is reading the snapshot.
+     */
+    void capture(Array<Body> bodies) {
+        indices.clear();
+
+        int index = 0;
+        for(Body body : bodies) {
+            // Chunk bodies are static, and asking Box2D for the type of each is a native call
+            if(body.getUserData() instanceof Chunk || body.getType() != BodyDef.BodyType.DynamicBody) {
+                continue;
+            }
+
+            if(transforms.length < (index + 1) * 3) {
+                transforms = Arrays.copyOf(transforms, Math.max(48, transforms.length * 2));
+            }
+
+            Vector2 position = body.getPosition();
+            indices.put(body, index);
+            transforms[index * 3] = position.x;
+            transforms[index * 3 + 1] = position.y;
+            transforms[index * 3 + 2] = body.getAngle();
+            index++;
+        }
+    }
+
+    /**
+     * @return the index of the body's transform, or -1 if it wasn't a dynamic body when the snapshot was taken
+     */
+    public int indexOf(Body body) {
+        return indices.get(body, -1);
+    }
+
+    public float getX(int index) {
+        return transforms[index * 3];
+    }
+
+    public float getY(int index) {
+        return transforms[index * 3 + 1];
+    }
+
+    public float getAngle(int index) {
+        return transforms[index * 3 + 2];
+    }
+}
@@ -0,0 +1,178 @@
+package sk.accerek.hamlet.world.simulation;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Steps the Box2D world at a fixed rate, regardless of how fast frames are rendered. It either runs on the render
+ * thread, stepping as many times as the last frame's duration calls for, or on its own simulation thread.
+ * <p>
+ * Box2D isn't thread-safe, so anything else touching the Box2D world (building colliders, casting light rays)
+ * has to hold {@link #getLock()}. After every step a {@link PhysicsSnapshot} of the dynamic bodies is published,
+ * which the renderer interpolates between to draw them smoothly at any frame rate.
+ * <p>
+ * Only the Box2D step runs on the simulation thread. Chunk colliders are still rebuilt and (de)activated by the
+ * world on the render thread, holding the lock, since they follow chunk loading and edits made there.
+ */
+public class Simulation {
+    private static final int VELOCITY_ITERATIONS = 6;
+    private static final int POSITION_ITERATIONS = 2;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final World box2dWorld;
+    private final FixedTimestep timestep;
+    private final boolean interpolate;
+    private final ExecutorService thread;
+
+    private final @Getter Object lock = new Object();
+    private final Array<Body> bodies = new Array<>();
+
+    private final Object snapshotLock = new Object();
+    // The next step is captured into the spare snapshot, which then takes the place of the current one
+    private PhysicsSnapshot previousSnapshot = new PhysicsSnapshot();
+    private PhysicsSnapshot currentSnapshot = new PhysicsSnapshot();
+    private PhysicsSnapshot spareSnapshot = new PhysicsSnapshot();
+    private long currentSnapshotTime = 0;
+
+    public Simulation(World box2dWorld, int tickRate, int maxStepsPerFrame, boolean interpolate, boolean ownThread) {
+        this.box2dWorld = box2dWorld;
+        this.timestep = new FixedTimestep(1f / tickRate, maxStepsPerFrame, this::step);
+        this.interpolate = interpolate;
+
+        if(ownThread) {
+            this.thread = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("Simulation Thread")
+                    .setDaemon(true)
+                    .build());
+            this.thread.execute(this::run);
+        } else {
+            this.thread = null;
+        }
+    }
+
+    /**
+     * Called once per rendered frame. Steps the world for the frame's duration, unless it runs on its own thread.
+     */
+    public void update(float delta) {
+        if(thread == null) {
+            timestep.advance(delta);
+        }
+    }
+
+    public boolean isThreaded() {
+        return thread != null;
+    }
+
+    public long getStepCount() {
+        return timestep.getStepCount();
+    }
+
+    public long getDroppedSteps() {
+        return timestep.getDroppedSteps();
+    }
+
+    /**
+     * How far rendering is between the last two snapshots, from 0 to 1.
+     */
+    public float getAlpha() {
+        if(thread == null) {
+            return timestep.getAlpha();
+        }
+
+        long sinceSnapshot;
+        synchronized (snapshotLock) {
+            sinceSnapshot = System.nanoTime() - currentSnapshotTime;
+        }
+
+        return Math.min(1f, sinceSnapshot / (timestep.getTimeStep() * 1e9f));
+    }
+
+    /**
+     * Writes the body's position as of the last step, or blended between the last two steps when interpolation is
+     * enabled, into {@code out}.
+     *
+     * @return false if the body wasn't a dynamic body as of the last step, leaving {@code out} untouched
+     */
+    public boolean getInterpolatedPosition(Body body, Vector2 out) {
+        // Snapshots are reused, so they're only read while the next step can't swap them
+        synchronized (snapshotLock) {
+            int index = currentSnapshot.indexOf(body);
+            if(index < 0) {
+                return false;
+            }
+
+            int previousIndex = previousSnapshot.indexOf(body);
+            if(!interpolate || previousIndex < 0) {
+                out.set(currentSnapshot.getX(index), currentSnapshot.getY(index));
+                return true;
+            }
+
+            float alpha = getAlpha();
+            out.set(MathUtils.lerp(previousSnapshot.getX(previousIndex), currentSnapshot.getX(index), alpha),
+                    MathUtils.lerp(previousSnapshot.getY(previousIndex), currentSnapshot.getY(index), alpha));
+            return true;
+        }
+    }
+
+    public void shutdown() {
+        if(thread == null) {
+            return;
+        }
+
+        thread.shutdownNow();
+        try {
+            if(!thread.awaitTermination(1, TimeUnit.SECONDS)) {
+                logger.warn("The simulation thread didn't stop in time!");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void step() {
+        synchronized (lock) {
+            box2dWorld.step(timestep.getTimeStep(), VELOCITY_ITERATIONS, POSITION_ITERATIONS);
+
+            box2dWorld.getBodies(bodies);
+            spareSnapshot.capture(bodies);
+            bodies.clear();
+
+            synchronized (snapshotLock) {
+                PhysicsSnapshot snapshot = spareSnapshot;
+                spareSnapshot = previousSnapshot;
+                previousSnapshot = currentSnapshot;
+                currentSnapshot = snapshot;
+                currentSnapshotTime = System.nanoTime();
+            }
+        }
+    }
+
+    private void run() {
+        long last = System.nanoTime();
+
+        while(!Thread.currentThread().isInterrupted()) {
+            long now = System.nanoTime();
+            try {
+                timestep.advance((now - last) / 1e9f);
+            } catch (Exception e) {
+                logger.error("Simulation step failed!", e);
+            }
+            last = now;
+
+            LockSupport.parkNanos((long) (timestep.getTimeUntilNextStep() * 1e9f));
+        }
+    }
+}
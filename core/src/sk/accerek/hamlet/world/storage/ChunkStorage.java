@@ -0,0 +1,14 @@
+package sk.accerek.hamlet.world.storage;
+
+import sk.accerek.hamlet.world.base.ChunkKey;
+import sk.accerek.hamlet.world.base.ChunkProvider;
+
+/**
+ * A {@link ChunkProvider} that keeps chunks on disk, and can tell which ones it has without reading them.
+ */
+public interface ChunkStorage extends ChunkProvider {
+    /**
+     * @return the {@link ChunkKey}s of every chunk saved in the storage, in no particular order
+     */
+    long[] getStoredChunks();
+}
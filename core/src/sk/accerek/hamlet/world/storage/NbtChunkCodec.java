@@ -0,0 +1,579 @@
+package sk.accerek.hamlet.world.storage;
+
+import com.flowpowered.nbt.*;
+import com.flowpowered.nbt.stream.NBTInputStream;
+import com.flowpowered.nbt.stream.NBTOutputStream;
+import lombok.Cleanup;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.block.Block;
+import sk.accerek.hamlet.world.block.BlockType;
+import sk.accerek.hamlet.world.tile.TileType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Converts chunks to and from their (GZIP-compressed) NBT representation, independent of where the bytes are stored.
+ */
+public class NbtChunkCodec {
+    public static final int FORMAT_VERSION = 2;
+
+    private static final int LAYER_SIZE = Chunk.CHUNK_SIZE * Chunk.CHUNK_SIZE;
+    private static final int MAX_PALETTE_SIZE = 255;
+
+    private final Logger logger;
+    private final long seed;
+
+    public NbtChunkCodec(String worldName) {
+        this(worldName, 0);
+    }
+
+    /**
+     * @param seed the world's seed, given to every decoded chunk
+     */
+    public NbtChunkCodec(String worldName, long seed) {
+        this.seed = seed;
+        logger = LoggerFactory.getLogger("NbtChunkCodec{" + worldName + "}");
+    }
+
+    /**
+     * Decodes the chunk at the given position from the stream, closing it afterwards.
+     */
+    @SuppressWarnings("unchecked")
+    public Optional<Chunk> decode(int x, int y, InputStream inputStream) {
+        Tag<?> rootTag;
+        try {
+            @Cleanup NBTInputStream nbtInputStream = new NBTInputStream(inputStream);
+            rootTag = nbtInputStream.readTag();
+        } catch (Exception e) {
+            logger.error("Failed to read chunk {" + x + ", " + y + "}", e);
+            return Optional.empty();
+        }
+
+        if(rootTag.getType() != TagType.TAG_COMPOUND) {
+            chunkLoadingError("root tag isn't a compound tag", x, y);
+            return Optional.empty();
+        }
+
+        CompoundTag compoundRootTag = (CompoundTag) rootTag;
+
+        CompoundMap data = compoundRootTag.getValue();
+
+        Tag<?> versionTag = data.get("version");
+        if(versionTag == null) {
+            return decodeV1(x, y, data);
+        }
+
+        if(versionTag.getType() != TagType.TAG_INT) {
+            chunkLoadingError("version tag isn't an int", x, y);
+            return Optional.empty();
+        }
+
+        int version = ((IntTag) versionTag).getValue();
+        switch (version) {
+            case 1:
+                return decodeV1(x, y, data);
+            case 2:
+                return decodeV2(x, y, data);
+            default:
+                chunkLoadingError("unsupported format version " + version, x, y);
+                return Optional.empty();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Optional<Chunk> decodeV1(int x, int y, CompoundMap data) {
+        if(!data.containsKey("blocks")) {
+            chunkLoadingError("missing blocks tag", x, y);
+            return Optional.empty();
+        }
+
+        if(!data.containsKey("tiles")) {
+            chunkLoadingError("missing tiles tag", x, y);
+            return Optional.empty();
+        }
+
+        List<BlockData> loadedBlockData = new ArrayList<>();
+        List<TileData> loadedTileData = new ArrayList<>();
+
+        Tag<?> blocksTag0 = data.get("blocks");
+        if(blocksTag0.getType() != TagType.TAG_LIST) {
+            chunkLoadingError("blocks tag isn't a list", x, y);
+            return Optional.empty();
+        }
+
+        if(((ListTag) blocksTag0).getElementType() != CompoundTag.class) {
+            chunkLoadingError("blocks list doesn't store compound tags", x, y);
+            return Optional.empty();
+        }
+
+        ListTag<CompoundTag> blocksTag = (ListTag<CompoundTag>) blocksTag0;
+        for(CompoundTag blockTag : blocksTag.getValue()) {
+            CompoundMap blockMap = blockTag.getValue();
+
+            if(!blockMap.containsKey("type")) {
+                chunkLoadingError("block tag doesn't have a type", x, y);
+                continue;
+            }
+
+            if(!blockMap.containsKey("x") || !blockMap.containsKey("y")) {
+                chunkLoadingError("block tag doesn't have coordinates", x, y);
+                continue;
+            }
+
+            Tag<?> typeTag = blockMap.get("type");
+            Tag<?> xTag = blockMap.get("x");
+            Tag<?> yTag = blockMap.get("y");
+
+            if(typeTag.getType() != TagType.TAG_STRING || xTag.getType() != TagType.TAG_BYTE || yTag.getType() != TagType.TAG_BYTE) {
+                chunkLoadingError("failed to assert tag types in block", x, y);
+                continue;
+            }
+
+            String typeName = ((StringTag) typeTag).getValue();
+            byte bX = ((ByteTag) xTag).getValue();
+            byte bY = ((ByteTag) yTag).getValue();
+
+            BlockType blockType = BlockType.getByName(typeName);
+            if(blockType == null) {
+                chunkLoadingError("invalid block type: " + typeName, x, y);
+                continue;
+            }
+
+            loadedBlockData.add(new BlockData(blockType, (int) bX, (int) bY));
+        }
+
+        logger.debug("Loaded {} blocks for chunk {};{}", loadedBlockData.size(), x, y);
+
+        Tag<?> tilesTag0 = data.get("tiles");
+        if(tilesTag0.getType() != TagType.TAG_LIST) {
+            chunkLoadingError("tiles tag isn't a list", x, y);
+            return Optional.empty();
+        }
+
+        if(((ListTag) tilesTag0).getElementType() != CompoundTag.class) {
+            chunkLoadingError("tiles list doesn't store compound tags", x, y);
+            return Optional.empty();
+        }
+
+        ListTag<CompoundTag> tilesTag = (ListTag<CompoundTag>) tilesTag0;
+
+        for(CompoundTag tileTag : tilesTag.getValue()) {
+            CompoundMap tileMap = tileTag.getValue();
+
+            if(!tileMap.containsKey("type")) {
+                chunkLoadingError("tile tag doesn't have a type", x, y);
+                continue;
+            }
+
+            if(!tileMap.containsKey("x") || !tileMap.containsKey("y")) {
+                chunkLoadingError("tile tag doesn't have coordinates", x, y);
+                continue;
+            }
+
+            Tag<?> typeTag = tileMap.get("type");
+            Tag<?> xTag = tileMap.get("x");
+            Tag<?> yTag = tileMap.get("y");
+
+            if(typeTag.getType() != TagType.TAG_STRING || xTag.getType() != TagType.TAG_BYTE || yTag.getType() != TagType.TAG_BYTE) {
+                chunkLoadingError("failed to assert tag types in tile", x, y);
+                continue;
+            }
+
+            String typeName = ((StringTag) typeTag).getValue();
+            byte bX = ((ByteTag) xTag).getValue();
+            byte bY = ((ByteTag) yTag).getValue();
+
+            TileType tileType;
+
+            try {
+                tileType = TileType.valueOf(TileType.class, typeName);
+            } catch (IllegalArgumentException e) {
+                tileType = null;
+            }
+
+            if(tileType == null) {
+                chunkLoadingError("invalid tile type: " + typeName, x, y);
+                continue;
+            }
+
+            loadedTileData.add(new TileData(tileType, (int) bX, (int) bY));
+        }
+
+        Chunk chunk = new Chunk(x, y, seed);
+        for(TileData tileData : loadedTileData) {
+            chunk.setTile(tileData.getTileType(), tileData.getX(), tileData.getY());
+        }
+
+        for(BlockData blockData : loadedBlockData) {
+            chunk.setBlock(blockData.getBlockType(), blockData.getX(), blockData.getY());
+        }
+
+        chunk.markSaved(chunk.getModificationCount());
+
+        return Optional.of(chunk);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Optional<Chunk> decodeV2(int x, int y, CompoundMap data) {
+        Tag<?> tilePaletteTag = data.get("tilePalette");
+        Tag<?> blockPaletteTag = data.get("blockPalette");
+        Tag<?> tilesTag = data.get("tiles");
+        Tag<?> blocksTag = data.get("blocks");
+
+        if(tilePaletteTag == null || blockPaletteTag == null || tilesTag == null || blocksTag == null) {
+            chunkLoadingError("missing palette or layer tag", x, y);
+            return Optional.empty();
+        }
+
+        if(tilePaletteTag.getType() != TagType.TAG_LIST || ((ListTag) tilePaletteTag).getElementType() != StringTag.class
+                || blockPaletteTag.getType() != TagType.TAG_LIST || ((ListTag) blockPaletteTag).getElementType() != StringTag.class) {
+            chunkLoadingError("palettes aren't string lists", x, y);
+            return Optional.empty();
+        }
+
+        if(tilesTag.getType() != TagType.TAG_BYTE_ARRAY || blocksTag.getType() != TagType.TAG_BYTE_ARRAY) {
+            chunkLoadingError("layers aren't byte arrays", x, y);
+            return Optional.empty();
+        }
+
+        List<StringTag> tileNames = ((ListTag<StringTag>) tilePaletteTag).getValue();
+        TileType[] tilePalette = new TileType[tileNames.size() + 1];
+        for(int i = 0; i < tileNames.size(); i++) {
+            try {
+                tilePalette[i + 1] = TileType.valueOf(tileNames.get(i).getValue());
+            } catch (IllegalArgumentException e) {
+                chunkLoadingError("invalid tile type: " + tileNames.get(i).getValue(), x, y);
+            }
+        }
+
+        List<StringTag> blockNames = ((ListTag<StringTag>) blockPaletteTag).getValue();
+        BlockType[] blockPalette = new BlockType[blockNames.size() + 1];
+        for(int i = 0; i < blockNames.size(); i++) {
+            blockPalette[i + 1] = BlockType.getByName(blockNames.get(i).getValue());
+            if(blockPalette[i + 1] == null) {
+                chunkLoadingError("invalid block type: " + blockNames.get(i).getValue(), x, y);
+            }
+        }
+
+        int[] tileIndices = new int[LAYER_SIZE];
+        int[] blockIndices = new int[LAYER_SIZE];
+        if(!decodeRuns(((ByteArrayTag) tilesTag).getValue(), tileIndices, tilePalette.length)) {
+            chunkLoadingError("malformed tile layer", x, y);
+            return Optional.empty();
+        }
+
+        if(!decodeRuns(((ByteArrayTag) blocksTag).getValue(), blockIndices, blockPalette.length)) {
+            chunkLoadingError("malformed block layer", x, y);
+            return Optional.empty();
+        }
+
+        // Chunks saved before variants were stored get theirs picked again
+        byte[] tileVariants = decodeVariants(data.get("tileVariants"), x, y);
+        byte[] blockVariants = decodeVariants(data.get("blockVariants"), x, y);
+
+        Chunk chunk = new Chunk(x, y, seed);
+        for(int i = 0; i < LAYER_SIZE; i++) {
+            TileType tileType = tilePalette[tileIndices[i]];
+            if(tileType != null) {
+                chunk.setTile(tileType, i / Chunk.CHUNK_SIZE, i % Chunk.CHUNK_SIZE);
+            }
+        }
+
+        if(tileVariants != null) {
+            System.arraycopy(tileVariants, 0, chunk.getTileVariants(), 0, LAYER_SIZE);
+        }
+
+        for(int i = 0; i < LAYER_SIZE; i++) {
+            BlockType blockType = blockPalette[blockIndices[i]];
+            if(blockType == null) {
+                continue;
+            }
+
+            if(blockVariants != null) {
+                chunk.restoreBlock(blockType, i / Chunk.CHUNK_SIZE, i % Chunk.CHUNK_SIZE, blockVariants[i]);
+            } else {
+                chunk.setBlock(blockType, i / Chunk.CHUNK_SIZE, i % Chunk.CHUNK_SIZE);
+            }
+        }
+
+        chunk.markSaved(chunk.getModificationCount());
+
+        return Optional.of(chunk);
+    }
+
+    /**
+     * Unpacks two 4 bit variants per byte, or returns null if the tag is missing or malformed.
+     */
+    private byte[] decodeVariants(Tag<?> tag, int x, int y) {
+        if(tag == null) {
+            return null;
+        }
+
+        if(tag.getType() != TagType.TAG_BYTE_ARRAY || ((ByteArrayTag) tag).getValue().length != LAYER_SIZE / 2) {
+            chunkLoadingError("malformed variant layer " + tag.getName() + ", picking variants again", x, y);
+            return null;
+        }
+
+        byte[] packed = ((ByteArrayTag) tag).getValue();
+        byte[] variants = new byte[LAYER_SIZE];
+        for(int i = 0; i < packed.length; i++) {
+            variants[i * 2] = (byte) (packed[i] & 0x0F);
+            variants[i * 2 + 1] = (byte) ((packed[i] >> 4) & 0x0F);
+        }
+
+        return variants;
+    }
+
+    private static byte[] encodeVariants(byte[] variants) {
+        byte[] packed = new byte[LAYER_SIZE / 2];
+        for(int i = 0; i < packed.length; i++) {
+            packed[i] = (byte) ((variants[i * 2] & 0x0F) | (variants[i * 2 + 1] & 0x0F) << 4);
+        }
+
+        return packed;
+    }
+
+    /**
+     * Expands (run length - 1, palette index) byte pairs into {@code indices}.
+     */
+    private static boolean decodeRuns(byte[] runs, int[] indices, int paletteSize) {
+        if(runs.length % 2 != 0) {
+            return false;
+        }
+
+        int position = 0;
+        for(int i = 0; i < runs.length; i += 2) {
+            int length = (runs[i] & 0xFF) + 1;
+            int index = runs[i + 1] & 0xFF;
+
+            if(position + length > indices.length || index >= paletteSize) {
+                return false;
+            }
+
+            Arrays.fill(indices, position, position + length, index);
+            position += length;
+        }
+
+        return position == indices.length;
+    }
+
+    private static byte[] encodeRuns(int[] indices) {
+        ByteArrayOutputStream runs = new ByteArrayOutputStream();
+
+        int start = 0;
+        while(start < indices.length) {
+            int end = start + 1;
+            while(end < indices.length && end - start < 256 && indices[end] == indices[start]) {
+                end++;
+            }
+
+            runs.write(end - start - 1);
+            runs.write(indices[start]);
+            start = end;
+        }
+
+        return runs.toByteArray();
+    }
+
+    private void chunkLoadingError(String message, int x, int y) {
+        logger.error("Failed to load chunk {};{}: {}", x, y, message);
+    }
+
+    public void encode(Chunk chunk, OutputStream outputStream) throws IOException {
+        encode(chunk, outputStream, FORMAT_VERSION);
+    }
+
+    public void encode(Chunk chunk, OutputStream outputStream, int version) throws IOException {
+        CompoundTag rootCompoundTag;
+        switch (version) {
+            case 1:
+                rootCompoundTag = encodeV1(chunk);
+                break;
+            case 2:
+                rootCompoundTag = encodeV2(chunk);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported chunk format version " + version);
+        }
+
+        @Cleanup NBTOutputStream nbtOutputStream = new NBTOutputStream(outputStream);
+        nbtOutputStream.writeTag(rootCompoundTag);
+    }
+
+    private CompoundTag encodeV1(Chunk chunk) {
+        CompoundTag rootCompoundTag = new CompoundTag("root", new CompoundMap());
+        CompoundMap rootData = rootCompoundTag.getValue();
+
+        ArrayList<CompoundTag> blocksList = new ArrayList<>();
+
+        for(Block[] column : chunk.getBlocks()) {
+            for(Block block : column) {
+                if(block == null) {
+                    continue;
+                }
+
+                CompoundTag blockTag = new CompoundTag("", new CompoundMap());
+                CompoundMap blockMap = blockTag.getValue();
+
+                blockMap.put(new StringTag("type", block.getBlockType().getName()));
+                blockMap.put(new ByteTag("x", block.getPositionInChunk().getX().byteValue()));
+                blockMap.put(new ByteTag("y", block.getPositionInChunk().getY().byteValue()));
+
+                blocksList.add(blockTag);
+            }
+        }
+
+        ListTag<CompoundTag> blockListTag = new ListTag<>("blocks", CompoundTag.class, blocksList);
+
+        ArrayList<CompoundTag> tilesList = new ArrayList<>();
+
+        short[] tileTypeIds = chunk.getTileTypeIds();
+        for(int i = 0; i < tileTypeIds.length; i++) {
+            TileType tileType = TileType.getById(tileTypeIds[i] - 1);
+            if(tileType == null) {
+                continue;
+            }
+
+            CompoundTag tileTag = new CompoundTag("", new CompoundMap());
+            CompoundMap tileMap = tileTag.getValue();
+
+            tileMap.put(new StringTag("type", tileType.name()));
+            tileMap.put(new ByteTag("x", (byte) (i / Chunk.CHUNK_SIZE)));
+            tileMap.put(new ByteTag("y", (byte) (i % Chunk.CHUNK_SIZE)));
+
+            tilesList.add(tileTag);
+        }
+
+        ListTag<CompoundTag> tileListTag = new ListTag<>("tiles", CompoundTag.class, tilesList);
+
+        rootData.put(blockListTag);
+        rootData.put(tileListTag);
+
+        return rootCompoundTag;
+    }
+
+    private CompoundTag encodeV2(Chunk chunk) {
+        List<StringTag> tilePalette = new ArrayList<>();
+        List<StringTag> blockPalette = new ArrayList<>();
+        Map<String, Integer> tileIds = new HashMap<>();
+        Map<String, Integer> blockIds = new HashMap<>();
+
+        int[] tileIndices = new int[LAYER_SIZE];
+        int[] blockIndices = new int[LAYER_SIZE];
+        byte[] blockVariants = new byte[LAYER_SIZE];
+        short[] tileTypeIds = chunk.getTileTypeIds();
+
+        for(int x = 0; x < Chunk.CHUNK_SIZE; x++) {
+            for(int y = 0; y < Chunk.CHUNK_SIZE; y++) {
+                int i = x * Chunk.CHUNK_SIZE + y;
+
+                TileType tileType = TileType.getById(tileTypeIds[i] - 1);
+                if(tileType != null) {
+                    tileIndices[i] = paletteIndex(tileType.name(), tileIds, tilePalette);
+                }
+
+                Block block = chunk.getBlock(x, y);
+                if(block != null) {
+                    blockIndices[i] = paletteIndex(block.getBlockType().getName(), blockIds, blockPalette);
+                    blockVariants[i] = (byte) block.getVariant();
+                }
+            }
+        }
+
+        CompoundTag rootCompoundTag = new CompoundTag("root", new CompoundMap());
+        CompoundMap rootData = rootCompoundTag.getValue();
+
+        rootData.put(new IntTag("version", 2));
+        rootData.put(new ListTag<>("tilePalette", StringTag.class, tilePalette));
+        rootData.put(new ListTag<>("blockPalette", StringTag.class, blockPalette));
+        rootData.put(new ByteArrayTag("tiles", encodeRuns(tileIndices)));
+        rootData.put(new ByteArrayTag("blocks", encodeRuns(blockIndices)));
+        rootData.put(new ByteArrayTag("tileVariants", encodeVariants(chunk.getTileVariants())));
+        rootData.put(new ByteArrayTag("blockVariants", encodeVariants(blockVariants)));
+
+        return rootCompoundTag;
+    }
+
+    private static int paletteIndex(String name, Map<String, Integer> ids, List<StringTag> palette) {
+        Integer id = ids.get(name);
+        if(id == null) {
+            if(palette.size() >= MAX_PALETTE_SIZE) {
+                throw new IllegalStateException("Chunk palette can't hold more than " + MAX_PALETTE_SIZE + " types");
+            }
+
+            palette.add(new StringTag("", name));
+            id = palette.size();
+            ids.put(name, id);
+        }
+
+        return id;
+    }
+
+    @Data
+    private class BlockData {
+        private final BlockType blockType;
+        private final int x;
+        private final int y;
+    }
+
+    @Data
+    private class TileData {
+        private final TileType tileType;
+        private final int x;
+        private final int y;
+    }
+
+    /*
+    Version 2 (written): palette indices are 1-based, 0 means empty. Both layers store one index per
+    position in x * CHUNK_SIZE + y order, as (run length - 1, index) byte pairs.
+
+    root (TAG_COMPOUND) {
+        version (TAG_INT) = 2
+        tilePalette (TAG_LIST) {
+            _(TAG_STRING)
+        }
+        blockPalette (TAG_LIST) {
+            _(TAG_STRING)
+        }
+        tiles (TAG_BYTE_ARRAY)
+        blocks (TAG_BYTE_ARRAY)
+        tileVariants (TAG_BYTE_ARRAY, optional)
+        blockVariants (TAG_BYTE_ARRAY, optional)
+    }
+
+    The variant layers hold two 4 bit variants per byte, the lower nibble first, in the same order as the other
+    layers. Chunks saved without them have their variants picked again when they're loaded.
+
+    Version 1 (files written before the version tag existed):
+
+    root (TAG_COMPOUND) {
+        blocks(TAG_LIST) {
+            _(TAG_COMPOUND) {
+                type (TAG_STRING)
+                x (TAG_BYTE)
+                y (TAG_BYTE)
+            }
+        }
+
+        tiles(TAG_LIST) {
+            _(TAG_COMPOUND) {
+                type (TAG_STRING)
+                x (TAG_BYTE)
+                y (TAG_BYTE)
+            }
+        }
+    }
+     */
+}
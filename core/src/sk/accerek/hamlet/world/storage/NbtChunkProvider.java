@@ -3,307 +3,118 @@ package sk.accerek.hamlet.world.storage;
 import com.badlogic.gdx.Files;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.files.FileHandle;
-import com.flowpowered.nbt.*;
-import com.flowpowered.nbt.stream.NBTInputStream;
-import com.flowpowered.nbt.stream.NBTOutputStream;
-import lombok.Cleanup;
-import lombok.Data;
+import com.badlogic.gdx.utils.GdxRuntimeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sk.accerek.hamlet.world.base.Chunk;
-import sk.accerek.hamlet.world.base.ChunkProvider;
-import sk.accerek.hamlet.world.base.Pair;
-import sk.accerek.hamlet.world.block.Block;
-import sk.accerek.hamlet.world.block.BlockType;
-import sk.accerek.hamlet.world.tile.Tile;
-import sk.accerek.hamlet.world.tile.TileType;
+import sk.accerek.hamlet.world.base.ChunkKey;
 
-import java.io.InputStream;
+import java.io.IOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Optional;
 
-public class NbtChunkProvider implements ChunkProvider {
+public class NbtChunkProvider implements ChunkStorage {
     private final String worldName;
+    private final long seed;
     private final FileHandle rootDirectory;
     private final FileHandle chunksDirectory;
+    private final NbtChunkCodec codec;
 
     private Logger logger;
 
     public NbtChunkProvider(String worldName, Files.FileType fileType) {
-        this.worldName = worldName;
+        this(worldName, fileType, 0);
+    }
+
+    /**
+     * @param seed the world's seed, which tile and block variants are picked with
+     */
+    public NbtChunkProvider(String worldName, Files.FileType fileType, long seed) {
+        this(Gdx.files.getFileHandle("worlds/" + worldName + "/", fileType), seed);
+    }
+
+    /**
+     * Uses the directory as the world's directory, instead of looking the world up in {@code worlds} by name.
+     */
+    public NbtChunkProvider(FileHandle rootDirectory, long seed) {
+        this.worldName = rootDirectory.name();
+        this.seed = seed;
+        this.rootDirectory = rootDirectory;
 
-        rootDirectory = Gdx.files.getFileHandle("worlds/" + worldName + "/", fileType);
         chunksDirectory = rootDirectory.child("chunks");
+        codec = new NbtChunkCodec(worldName, seed);
 
         logger = LoggerFactory.getLogger("NbtChunkProvider{" + worldName + "}");
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public Optional<Chunk> provide(int x, int y) {
-        FileHandle chunkFileHandle = chunksDirectory.child("chunk." + x + "." + y + ".skacc");
+        FileHandle chunkFileHandle = getChunkFile(x, y);
         if(!chunkFileHandle.exists()) {
-            return Optional.of(new Chunk(new Pair<>(x, y)));
-        }
-
-        InputStream chunkFileStream = chunkFileHandle.read();
-        Tag rootTag;
-        try {
-            @Cleanup NBTInputStream nbtInputStream = new NBTInputStream(chunkFileStream);
-            rootTag = nbtInputStream.readTag();
-        } catch (Exception e) {
-            logger.error("Failed to read chunk {" + x + ", " + y + "}", e);
-            return Optional.empty();
-        }
-
-        if(rootTag.getType() != TagType.TAG_COMPOUND) {
-            chunkLoadingError("root tag isn't a compound tag", x, y);
-            return Optional.empty();
-        }
-
-        CompoundTag compoundRootTag = (CompoundTag) rootTag;
-
-        CompoundMap data = compoundRootTag.getValue();
-        if(!data.containsKey("blocks")) {
-            chunkLoadingError("missing blocks tag", x, y);
-            return Optional.empty();
-        }
-
-        if(!data.containsKey("tiles")) {
-            chunkLoadingError("missing tiles tag", x, y);
-            return Optional.empty();
-        }
-
-        List<BlockData> loadedBlockData = new ArrayList<>();
-        List<TileData> loadedTileData = new ArrayList<>();
-
-        Tag blocksTag0 = data.get("blocks");
-        if(blocksTag0.getType() != TagType.TAG_LIST) {
-            chunkLoadingError("blocks tag isn't a list", x, y);
-            return Optional.empty();
-        }
-
-        if(((ListTag) blocksTag0).getElementType() != CompoundTag.class) {
-            chunkLoadingError("blocks list doesn't store compound tags", x, y);
-            return Optional.empty();
-        }
-
-        ListTag<CompoundTag> blocksTag = (ListTag<CompoundTag>) blocksTag0;
-        for(CompoundTag blockTag : blocksTag.getValue()) {
-            CompoundMap blockMap = blockTag.getValue();
-
-            if(!blockMap.containsKey("type")) {
-                chunkLoadingError("block tag doesn't have a type", x, y);
-                continue;
-            }
-
-            if(!blockMap.containsKey("x") || !blockMap.containsKey("y")) {
-                chunkLoadingError("block tag doesn't have coordinates", x, y);
-                continue;
-            }
-
-            Tag typeTag = blockMap.get("type");
-            Tag xTag = blockMap.get("x");
-            Tag yTag = blockMap.get("y");
-
-            if(typeTag.getType() != TagType.TAG_STRING || xTag.getType() != TagType.TAG_BYTE || yTag.getType() != TagType.TAG_BYTE) {
-                chunkLoadingError("failed to assert tag types in block", x, y);
-                continue;
-            }
-
-            String typeName = ((StringTag) typeTag).getValue();
-            byte bX = ((ByteTag) xTag).getValue();
-            byte bY = ((ByteTag) yTag).getValue();
-
-            BlockType blockType;
-
-            try {
-                blockType = BlockType.valueOf(BlockType.class, typeName);
-            } catch (IllegalArgumentException e) {
-                blockType = null;
-            }
-
-            if(blockType == null) {
-                chunkLoadingError("invalid block type: " + typeName, x, y);
-                continue;
-            }
-
-            loadedBlockData.add(new BlockData(blockType, (int) bX, (int) bY));
+            return Optional.of(new Chunk(x, y, seed));
         }
 
-        logger.debug("Loaded {} blocks for chunk {};{}", loadedBlockData.size(), x, y);
-
-        Tag tilesTag0 = data.get("tiles");
-        if(tilesTag0.getType() != TagType.TAG_LIST) {
-            chunkLoadingError("tiles tag isn't a list", x, y);
-            return Optional.empty();
-        }
-
-        if(((ListTag) tilesTag0).getElementType() != CompoundTag.class) {
-            chunkLoadingError("tiles list doesn't store compound tags", x, y);
-            return Optional.empty();
-        }
-
-        ListTag<CompoundTag> tilesTag = (ListTag<CompoundTag>) tilesTag0;
-
-        for(CompoundTag tileTag : tilesTag.getValue()) {
-            CompoundMap tileMap = tileTag.getValue();
-
-            if(!tileMap.containsKey("type")) {
-                chunkLoadingError("tile tag doesn't have a type", x, y);
-                continue;
-            }
-
-            if(!tileMap.containsKey("x") || !tileMap.containsKey("y")) {
-                chunkLoadingError("tile tag doesn't have coordinates", x, y);
-                continue;
-            }
-
-            Tag typeTag = tileMap.get("type");
-            Tag xTag = tileMap.get("x");
-            Tag yTag = tileMap.get("y");
-
-            if(typeTag.getType() != TagType.TAG_STRING || xTag.getType() != TagType.TAG_BYTE || yTag.getType() != TagType.TAG_BYTE) {
-                chunkLoadingError("failed to assert tag types in tile", x, y);
-                continue;
-            }
-
-            String typeName = ((StringTag) typeTag).getValue();
-            byte bX = ((ByteTag) xTag).getValue();
-            byte bY = ((ByteTag) yTag).getValue();
-
-            TileType tileType;
-
-            try {
-                tileType = TileType.valueOf(TileType.class, typeName);
-            } catch (IllegalArgumentException e) {
-                tileType = null;
-            }
+        return codec.decode(x, y, chunkFileHandle.read());
+    }
 
-            if(tileType == null) {
-                chunkLoadingError("invalid tile type: " + typeName, x, y);
-                continue;
-            }
+    @Override
+    public boolean exists(int x, int y) {
+        return getChunkFile(x, y).exists();
+    }
 
-            loadedTileData.add(new TileData(tileType, (int) bX, (int) bY));
-        }
+    @Override
+    public void unload(Chunk chunk) throws IOException {
+        FileHandle chunkFileHandle = getChunkFile(chunk.getChunkX(), chunk.getChunkY());
 
-        Chunk chunk = new Chunk(new Pair<>(x, y));
-        for(TileData tileData : loadedTileData) {
-            chunk.setTile(tileData.getTileType(), tileData.getX(), tileData.getY());
+        if(!isWritable()) {
+            throw new IOException("Can't save chunk " + chunk.getChunkPosition() + " to internal storage");
         }
 
-        for(BlockData blockData : loadedBlockData) {
-            chunk.setBlock(blockData.getBlockType(), blockData.getX(), blockData.getY());
+        OutputStream outputStream;
+        try {
+            outputStream = chunkFileHandle.write(false);
+        } catch (GdxRuntimeException e) {
+            throw new IOException("Can't open " + chunkFileHandle + " for writing", e);
         }
 
-        return Optional.of(chunk);
+        codec.encode(chunk, outputStream);
     }
 
-    private void chunkLoadingError(String message, int x, int y) {
-        logger.error("Failed to load chunk {};{}: {}", x, y, message);
+    @Override
+    public boolean isWritable() {
+        return rootDirectory.type() != Files.FileType.Internal && rootDirectory.type() != Files.FileType.Classpath;
     }
 
     @Override
-    public void unload(Chunk chunk) {
-        FileHandle chunkFileHandle = chunksDirectory.child("chunk." + chunk.getChunkPosition().getX() + "." + chunk.getChunkPosition().getY() + ".skacc");
-
-        if(chunkFileHandle.type() == Files.FileType.Internal) {
-            logger.warn("Can't save to internal storage, chunk save for {} aborted!", chunk.getChunkPosition());
-            return;
-        }
-
-        CompoundTag rootCompoundTag = new CompoundTag("root", new CompoundMap());
-        CompoundMap rootData = rootCompoundTag.getValue();
-
-        ArrayList<CompoundTag> blocksList = new ArrayList<>();
-
-        for(Block[] column : chunk.getBlocks()) {
-            for(Block block : column) {
-                if(block == null) {
-                    continue;
-                }
-
-                CompoundTag blockTag = new CompoundTag("", new CompoundMap());
-                CompoundMap blockMap = blockTag.getValue();
-
-                blockMap.put(new StringTag("type", block.getBlockType().name()));
-                blockMap.put(new ByteTag("x", block.getPositionInChunk().getX().byteValue()));
-                blockMap.put(new ByteTag("y", block.getPositionInChunk().getY().byteValue()));
-
-                blocksList.add(blockTag);
+    public long[] getStoredChunks() {
+        FileHandle[] files = chunksDirectory.list(".skacc");
+        long[] keys = new long[files.length];
+        int count = 0;
+
+        for(FileHandle file : files) {
+            // chunk.<x>.<y>.skacc
+            String[] parts = file.name().split("\\.");
+            if(parts.length != 4 || !parts[0].equals("chunk")) {
+                continue;
             }
-        }
-
-        ListTag<CompoundTag> blockListTag = new ListTag<>("blocks", CompoundTag.class, blocksList);
-
-        ArrayList<CompoundTag> tilesList = new ArrayList<>();
-
-        for(Tile[] column : chunk.getTiles()) {
-            for(Tile tile : column) {
-                if(tile == null) {
-                    continue;
-                }
 
-                CompoundTag tileTag = new CompoundTag("", new CompoundMap());
-                CompoundMap tileMap = tileTag.getValue();
-
-                tileMap.put(new StringTag("type", tile.getTileType().name()));
-                tileMap.put(new ByteTag("x", tile.getPositionInChunk().getX().byteValue()));
-                tileMap.put(new ByteTag("y", tile.getPositionInChunk().getY().byteValue()));
-
-                tilesList.add(tileTag);
+            int x, y;
+            try {
+                x = Integer.parseInt(parts[1]);
+                y = Integer.parseInt(parts[2]);
+            } catch (NumberFormatException e) {
+                logger.warn("Skipping {}, its name isn't a chunk position", file.name());
+                continue;
             }
-        }
-
-        ListTag<CompoundTag> tileListTag = new ListTag<>("tiles", CompoundTag.class, tilesList);
 
-        rootData.put(blockListTag);
-        rootData.put(tileListTag);
-
-        OutputStream outputStream = chunkFileHandle.write(false);
-
-        try {
-            @Cleanup NBTOutputStream nbtOutputStream = new NBTOutputStream(outputStream);
-            nbtOutputStream.writeTag(rootCompoundTag);
-        } catch (Exception e) {
-            logger.error("Failed to save chunk " + chunk.getChunkPosition(), e);
+            keys[count++] = ChunkKey.pack(x, y);
         }
-    }
-
-    @Data
-    private class BlockData {
-        private final BlockType blockType;
-        private final int x;
-        private final int y;
-    }
 
-    @Data
-    private class TileData {
-        private final TileType tileType;
-        private final int x;
-        private final int y;
+        return Arrays.copyOf(keys, count);
     }
 
-    /*
-    root (TAG_COMPOUND) {
-        blocks(TAG_LIST) {
-            _(TAG_COMPOUND) {
-                type (TAG_STRING)
-                x (TAG_BYTE)
-                y (TAG_BYTE)
-            }
-        }
-
-        tiles(TAG_LIST) {
-            _(TAG_COMPOUND) {
-                type (TAG_STRING)
-                x (TAG_BYTE)
-                y (TAG_BYTE)
-            }
-        }
+    private FileHandle getChunkFile(int x, int y) {
+        return chunksDirectory.child("chunk." + x + "." + y + ".skacc");
     }
-     */
 }
@@ -0,0 +1,179 @@
+package sk.accerek.hamlet.world.storage;
+
+import com.badlogic.gdx.Files;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.base.ChunkKey;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores chunks in {@link RegionFile}s instead of one file per chunk. Open regions are kept around, and regions
+ * that don't exist on disk are remembered, so {@link #provide(int, int)} doesn't touch the file system for
+ * chunks it has already seen the region of.
+ */
+public class RegionChunkProvider implements ChunkStorage {
+    private final String worldName;
+    private final long seed;
+    private final FileHandle rootDirectory;
+    private final FileHandle regionsDirectory;
+    private final boolean writable;
+    private final NbtChunkCodec codec;
+
+    private final Map<Long, Optional<RegionFile>> regions = new ConcurrentHashMap<>();
+
+    private Logger logger;
+
+    public RegionChunkProvider(String worldName, Files.FileType fileType) {
+        this(worldName, fileType, 0);
+    }
+
+    /**
+     * @param seed the world's seed, which tile and block variants are picked with
+     */
+    public RegionChunkProvider(String worldName, Files.FileType fileType, long seed) {
+        this.worldName = worldName;
+        this.seed = seed;
+
+        rootDirectory = Gdx.files.getFileHandle("worlds/" + worldName + "/", fileType);
+        regionsDirectory = rootDirectory.child("regions");
+        writable = fileType != Files.FileType.Internal && fileType != Files.FileType.Classpath;
+        codec = new NbtChunkCodec(worldName, seed);
+
+        logger = LoggerFactory.getLogger("RegionChunkProvider{" + worldName + "}");
+    }
+
+    @Override
+    public Optional<Chunk> provide(int x, int y) {
+        if(!exists(x, y)) {
+            return Optional.of(new Chunk(x, y, seed));
+        }
+
+        try {
+            return getRegion(RegionFile.toRegion(x), RegionFile.toRegion(y), false).get().readChunk(x, y, codec);
+        } catch (IOException e) {
+            logger.error("Failed to read chunk {" + x + ", " + y + "}", e);
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public boolean exists(int x, int y) {
+        Optional<RegionFile> optionalRegion = getRegion(RegionFile.toRegion(x), RegionFile.toRegion(y), false);
+        return optionalRegion.isPresent() && optionalRegion.get().hasChunk(RegionFile.toLocal(x), RegionFile.toLocal(y));
+    }
+
+    @Override
+    public void unload(Chunk chunk) throws IOException {
+        if(!writable) {
+            throw new IOException("Can't save chunk " + chunk.getChunkPosition() + " to internal storage");
+        }
+
+        Optional<RegionFile> optionalRegion = getRegion(RegionFile.toRegion(chunk.getChunkX()), RegionFile.toRegion(chunk.getChunkY()), true);
+        if(!optionalRegion.isPresent()) {
+            throw new IOException("Can't save chunk " + chunk.getChunkPosition() + ", its region file couldn't be opened");
+        }
+
+        optionalRegion.get().writeChunk(chunk, codec);
+    }
+
+    @Override
+    public boolean isWritable() {
+        return writable;
+    }
+
+    @Override
+    public long[] getStoredChunks() {
+        long[] keys = new long[0];
+        int count = 0;
+
+        for(FileHandle file : regionsDirectory.list(".skreg")) {
+            // region.<x>.<y>.skreg
+            String[] parts = file.name().split("\\.");
+            int regionX, regionY;
+            try {
+                regionX = Integer.parseInt(parts[1]);
+                regionY = Integer.parseInt(parts[2]);
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                logger.warn("Skipping {}, its name isn't a region position", file.name());
+                continue;
+            }
+
+            Optional<RegionFile> region = getRegion(regionX, regionY, false);
+            if(!region.isPresent()) {
+                continue;
+            }
+
+            keys = Arrays.copyOf(keys, count + RegionFile.REGION_SIZE * RegionFile.REGION_SIZE);
+            for(int localX = 0; localX < RegionFile.REGION_SIZE; localX++) {
+                for(int localY = 0; localY < RegionFile.REGION_SIZE; localY++) {
+                    if(region.get().hasChunk(localX, localY)) {
+                        keys[count++] = ChunkKey.pack((regionX << RegionFile.REGION_BITS) + localX, (regionY << RegionFile.REGION_BITS) + localY);
+                    }
+                }
+            }
+        }
+
+        return Arrays.copyOf(keys, count);
+    }
+
+    @Override
+    public void dispose() {
+        for(Optional<RegionFile> region : regions.values()) {
+            if(!region.isPresent()) {
+                continue;
+            }
+
+            try {
+                region.get().close();
+            } catch (IOException e) {
+                logger.error("Failed to close region file " + region.get().getFile(), e);
+            }
+        }
+
+        regions.clear();
+    }
+
+    private Optional<RegionFile> getRegion(int regionX, int regionY, boolean create) {
+        long key = ChunkKey.pack(regionX, regionY);
+
+        Optional<RegionFile> region = regions.get(key);
+        if(region != null && (region.isPresent() || !create)) {
+            return region;
+        }
+
+        synchronized (regions) {
+            region = regions.get(key);
+            if(region != null && (region.isPresent() || !create)) {
+                return region;
+            }
+
+            File file = regionsDirectory.child("region." + regionX + "." + regionY + ".skreg").file();
+            if(!create && !file.exists()) {
+                region = Optional.empty();
+            } else {
+                try {
+                    if(create) {
+                        regionsDirectory.mkdirs();
+                    }
+
+                    region = Optional.of(new RegionFile(file, writable));
+                } catch (IOException e) {
+                    logger.error("Failed to open region file " + file, e);
+                    region = Optional.empty();
+                }
+            }
+
+            regions.put(key, region);
+            return region;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package sk.accerek.hamlet.world.storage;
+
+import lombok.Getter;
+import sk.accerek.hamlet.world.base.Chunk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Stores the chunks of a {@value #REGION_SIZE}x{@value #REGION_SIZE} area in a single file, split into
+ * {@value #SECTOR_SIZE} byte sectors.
+ * <p>
+ * The first sector is the header: one int per chunk, holding the index of its first sector in the upper
+ * 24 bits and the number of sectors it occupies in the lower 8 (0 if the chunk isn't stored). Every
+ * stored chunk starts with an int holding the length of the payload that follows.
+ * <p>
+ * Reads go through a read-only mapping of the whole file and are decoded straight from it. Writes allocate
+ * the first run of free sectors large enough for the chunk, reusing the space of rewritten chunks. When a
+ * write goes past the end of the file, the file is grown by as much as it already has (up to
+ * {@value #MAX_GROWTH_SECTORS} sectors at a time) and mapped again, so appending chunks doesn't remap it
+ * every time. The zeroed sectors at the end are free space for later writes.
+ */
+public class RegionFile implements Closeable {
+    public static final int REGION_BITS = 5;
+    public static final int REGION_SIZE = 1 << REGION_BITS;
+    public static final int SECTOR_SIZE = 4096;
+
+    private static final int HEADER_SECTORS = 1;
+    private static final int MAX_SECTORS_PER_CHUNK = 0xFF;
+    private static final int MAX_GROWTH_SECTORS = 256;
+
+    private final @Getter File file;
+    private final FileChannel channel;
+    private final boolean writable;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final int[] locations = new int[REGION_SIZE * REGION_SIZE];
+    private final BitSet usedSectors = new BitSet();
+    private int sectorCount;
+
+    private MappedByteBuffer mappedBuffer;
+
+    public RegionFile(File file, boolean writable) throws IOException {
+        this.file = file;
+        this.writable = writable;
+
+        if(writable) {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } else {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+
+        if(channel.size() < HEADER_SECTORS * SECTOR_SIZE) {
+            if(!writable) {
+                channel.close();
+                throw new IOException("Region file " + file + " is missing its header");
+            }
+
+            channel.write(ByteBuffer.allocate(HEADER_SECTORS * SECTOR_SIZE), 0);
+        }
+
+        this.sectorCount = (int) ((channel.size() + SECTOR_SIZE - 1) / SECTOR_SIZE);
+        this.usedSectors.set(0, HEADER_SECTORS);
+
+        mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        for(int i = 0; i < locations.length; i++) {
+            int location = mappedBuffer.getInt(i * 4);
+            int offset = location >>> 8;
+            int sectors = location & 0xFF;
+
+            if(location == 0 || offset < HEADER_SECTORS || offset + sectors > sectorCount) {
+                continue;
+            }
+
+            locations[i] = location;
+            usedSectors.set(offset, offset + sectors);
+        }
+    }
+
+    public static int toLocal(int chunkCoordinate) {
+        return chunkCoordinate & (REGION_SIZE - 1);
+    }
+
+    public static int toRegion(int chunkCoordinate) {
+        return chunkCoordinate >> REGION_BITS;
+    }
+
+    public boolean hasChunk(int localX, int localY) {
+        lock.readLock().lock();
+        try {
+            return locations[index(localX, localY)] != 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Decodes a chunk straight from the mapped file. The read lock is held for the whole decode so its
+     * sectors can't be handed out to another chunk halfway through.
+     *
+     * Chunks that aren't stored in this region (see {@link #hasChunk(int, int)}) come back empty.
+     */
+    public Optional<Chunk> readChunk(int chunkX, int chunkY, NbtChunkCodec codec) throws IOException {
+        lock.readLock().lock();
+        try {
+            int location = locations[index(toLocal(chunkX), toLocal(chunkY))];
+            if(location == 0) {
+                return Optional.empty();
+            }
+
+            int start = (location >>> 8) * SECTOR_SIZE;
+            int length = mappedBuffer.getInt(start);
+            if(length <= 0 || length > (location & 0xFF) * SECTOR_SIZE - 4) {
+                throw new IOException("Corrupt length " + length + " for chunk {" + chunkX + ", " + chunkY + "} in " + file);
+            }
+
+            ByteBuffer payload = mappedBuffer.duplicate();
+            payload.position(start + 4);
+            payload.limit(start + 4 + length);
+
+            return codec.decode(chunkX, chunkY, new ByteBufferInputStream(payload.slice()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void writeChunk(Chunk chunk, NbtChunkCodec codec) throws IOException {
+        if(!writable) {
+            throw new IOException("Region file " + file + " was opened read-only");
+        }
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(SECTOR_SIZE);
+        payload.write(new byte[4]);
+        codec.encode(chunk, payload);
+
+        byte[] data = payload.toByteArray();
+        ByteBuffer.wrap(data).putInt(0, data.length - 4);
+
+        int sectorsNeeded = (data.length + SECTOR_SIZE - 1) / SECTOR_SIZE;
+        if(sectorsNeeded > MAX_SECTORS_PER_CHUNK) {
+            throw new IOException("Chunk " + chunk.getChunkPosition() + " is too large for a region file (" + data.length + " bytes)");
+        }
+
+        lock.writeLock().lock();
+        try {
+            int index = index(toLocal(chunk.getChunkX()), toLocal(chunk.getChunkY()));
+            int oldLocation = locations[index];
+            int oldOffset = oldLocation >>> 8;
+            int oldSectors = oldLocation & 0xFF;
+
+            int offset;
+            if(oldLocation != 0 && oldSectors == sectorsNeeded) {
+                offset = oldOffset;
+            } else {
+                if(oldLocation != 0) {
+                    usedSectors.clear(oldOffset, oldOffset + oldSectors);
+                }
+
+                offset = allocate(sectorsNeeded);
+            }
+
+            ensureMapped(offset + sectorsNeeded);
+
+            ByteBuffer buffer = ByteBuffer.allocate(sectorsNeeded * SECTOR_SIZE);
+            buffer.put(data);
+            buffer.rewind();
+            channel.write(buffer, (long) offset * SECTOR_SIZE);
+
+            int location = (offset << 8) | sectorsNeeded;
+            ByteBuffer header = ByteBuffer.allocate(4);
+            header.putInt(0, location);
+            channel.write(header, index * 4L);
+
+            locations[index] = location;
+            usedSectors.set(offset, offset + sectorsNeeded);
+            sectorCount = Math.max(sectorCount, offset + sectorsNeeded);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int allocate(int sectors) {
+        int start = usedSectors.nextClearBit(HEADER_SECTORS);
+        while(start < sectorCount) {
+            int end = usedSectors.nextSetBit(start);
+            if(end < 0 || end >= sectorCount) {
+                end = sectorCount;
+            }
+
+            if(end - start >= sectors) {
+                return start;
+            }
+
+            start = usedSectors.nextClearBit(end);
+        }
+
+        return sectorCount;
+    }
+
+    /**
+     * Makes sure the first {@code sectors} sectors are in the file and mapped, growing both if they aren't.
+     */
+    private void ensureMapped(int sectors) throws IOException {
+        if(mappedBuffer.capacity() >= (long) sectors * SECTOR_SIZE) {
+            return;
+        }
+
+        int mappedSectors = mappedBuffer.capacity() / SECTOR_SIZE;
+        long size = (long) Math.max(sectors, mappedSectors + Math.min(mappedSectors, MAX_GROWTH_SECTORS)) * SECTOR_SIZE;
+        if(channel.size() < size) {
+            channel.write(ByteBuffer.allocate(1), size - 1);
+        }
+
+        mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    private static int index(int localX, int localY) {
+        return localX + localY * REGION_SIZE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if(!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
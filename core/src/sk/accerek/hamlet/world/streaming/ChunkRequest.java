@@ -0,0 +1,52 @@
+package sk.accerek.hamlet.world.streaming;
+
+import lombok.Getter;
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.base.ChunkKey;
+
+class ChunkRequest implements Comparable<ChunkRequest> {
+    private final @Getter long key;
+    private final @Getter int chunkX;
+    private final @Getter int chunkY;
+
+    private volatile long priority;
+    private volatile boolean cancelled = false;
+    private volatile Chunk result;
+
+    ChunkRequest(int chunkX, int chunkY) {
+        this.key = ChunkKey.pack(chunkX, chunkY);
+        this.chunkX = chunkX;
+        this.chunkY = chunkY;
+    }
+
+    void prioritize(int focusX, int focusY) {
+        long dx = chunkX - focusX;
+        long dy = chunkY - focusY;
+        this.priority = dx * dx + dy * dy;
+    }
+
+    long getPriority() {
+        return priority;
+    }
+
+    void cancel() {
+        this.cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    Chunk getResult() {
+        return result;
+    }
+
+    void complete(Chunk result) {
+        this.result = result;
+    }
+
+    @Override
+    public int compareTo(ChunkRequest o) {
+        return Long.compare(priority, o.priority);
+    }
+}
@@ -0,0 +1,153 @@
+package sk.accerek.hamlet.world.streaming;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.base.ChunkKey;
+import sk.accerek.hamlet.world.base.ChunkProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Loads chunks through a {@link ChunkProvider} on a pool of background threads, closest to the focus first.
+ * <p>
+ * {@link #request(int, int)}, {@link #setFocus(int, int, int)}, {@link #cancel(long)} and
+ * {@link #publishCompleted(Consumer)} are meant to be called from the render thread, which is also the
+ * only thread that ever sees the finished chunks.
+ */
+public class ChunkStreamer {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ChunkProvider chunkProvider;
+    private final ExecutorService workers;
+
+    private final PriorityBlockingQueue<ChunkRequest> queue = new PriorityBlockingQueue<>();
+    private final Map<Long, ChunkRequest> pending = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<ChunkRequest> completed = new ConcurrentLinkedQueue<>();
+
+    private int focusX = 0;
+    private int focusY = 0;
+
+    public ChunkStreamer(ChunkProvider chunkProvider, int threads) {
+        this.chunkProvider = chunkProvider;
+        this.workers = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat("Chunk Streaming Thread #%d")
+                .setDaemon(true)
+                .build());
+
+        for(int i = 0; i < threads; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    public boolean isPending(long key) {
+        return pending.containsKey(key);
+    }
+
+    public void request(int chunkX, int chunkY) {
+        long key = ChunkKey.pack(chunkX, chunkY);
+        if(pending.containsKey(key)) {
+            return;
+        }
+
+        ChunkRequest request = new ChunkRequest(chunkX, chunkY);
+        request.prioritize(focusX, focusY);
+        pending.put(key, request);
+        queue.add(request);
+    }
+
+    public void cancel(long key) {
+        ChunkRequest request = pending.remove(key);
+        if(request == null) {
+            return;
+        }
+
+        request.cancel();
+        queue.remove(request);
+    }
+
+    /**
+     * Moves the streaming focus, re-prioritizing queued requests and cancelling the ones further than
+     * {@code keepRadius} chunks away from it.
+     */
+    public void setFocus(int focusX, int focusY, int keepRadius) {
+        if(this.focusX == focusX && this.focusY == focusY) {
+            return;
+        }
+
+        this.focusX = focusX;
+        this.focusY = focusY;
+
+        long keepDistance = (long) keepRadius * keepRadius;
+        for(ChunkRequest request : pending.values()) {
+            request.prioritize(focusX, focusY);
+            if(request.getPriority() > keepDistance) {
+                cancel(request.getKey());
+            }
+        }
+
+        List<ChunkRequest> queued = new ArrayList<>(queue.size());
+        queue.drainTo(queued);
+        queue.addAll(queued);
+    }
+
+    /**
+     * Hands every chunk that finished loading since the last call to the consumer, skipping cancelled requests.
+     */
+    public void publishCompleted(Consumer<Chunk> consumer) {
+        ChunkRequest request;
+        while((request = completed.poll()) != null) {
+            if(!pending.remove(request.getKey(), request)) {
+                continue;
+            }
+
+            Chunk chunk = request.getResult();
+            if(chunk != null) {
+                consumer.accept(chunk);
+            }
+        }
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+        queue.clear();
+        pending.clear();
+        completed.clear();
+    }
+
+    private void work() {
+        while(!Thread.currentThread().isInterrupted()) {
+            ChunkRequest request;
+            try {
+                request = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if(request.isCancelled()) {
+                continue;
+            }
+
+            Optional<Chunk> optionalChunk;
+            try {
+                optionalChunk = chunkProvider.provide(request.getChunkX(), request.getChunkY());
+            } catch (Exception e) {
+                logger.error("Failed to stream chunk {" + request.getChunkX() + ", " + request.getChunkY() + "}", e);
+                optionalChunk = Optional.empty();
+            }
+
+            request.complete(optionalChunk.orElse(null));
+            completed.add(request);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package sk.accerek.hamlet.world.streaming;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.base.ChunkProvider;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists modified chunks through {@link ChunkProvider#unload(Chunk)} on a bounded pool of background threads.
+ * Once the queue is full the submitting thread saves the chunk itself, so saves can't pile up without limit.
+ * <p>
+ * Chunks stay reachable through {@link #getPending(long)} until their save finished, so a chunk that's loaded
+ * again in the meantime can be taken from here instead of reading a file that's still being written. Chunks which
+ * failed to save stay there too, still dirty, and are tried again on the next {@link #flush()}.
+ * <p>
+ * A save encodes the chunk while holding its monitor, which the chunk's mutators take as well, so the state
+ * written and the modification count marked as saved always match. Providers which can't save at all are
+ * never asked to.
+ */
+public class ChunkWriter {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ChunkProvider chunkProvider;
+    private final ThreadPoolExecutor executor;
+    private final Map<Long, Chunk> pending = new ConcurrentHashMap<>();
+    private final Map<Long, Chunk> failed = new ConcurrentHashMap<>();
+    private final Set<Long> saving = ConcurrentHashMap.newKeySet();
+
+    private final Object flushLock = new Object();
+    private int writesInFlight = 0;
+
+    public ChunkWriter(ChunkProvider chunkProvider, int threads, int queueSize) {
+        this.chunkProvider = chunkProvider;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat("Chunk Writer Thread #%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Queues the chunk for saving if it was modified since it was last saved and the provider can save it.
+     *
+     * @return whether a save was queued
+     */
+    public boolean write(Chunk chunk) {
+        if(!chunk.isDirty() || !chunkProvider.isWritable()) {
+            return false;
+        }
+
+        pending.put(chunk.getKey(), chunk);
+        failed.remove(chunk.getKey());
+
+        synchronized (flushLock) {
+            writesInFlight++;
+        }
+
+        executor.execute(() -> save(chunk));
+
+        return true;
+    }
+
+    public Chunk getPending(long key) {
+        return pending.get(key);
+    }
+
+    /**
+     * Whether a save of the chunk is running right now, as opposed to being queued or having failed.
+     */
+    public boolean isSaving(long key) {
+        return saving.contains(key);
+    }
+
+    /**
+     * Blocks until the running save of the chunk, if any, has finished.
+     */
+    public void awaitSave(long key) {
+        synchronized (flushLock) {
+            while(saving.contains(key)) {
+                try {
+                    flushLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of chunks whose last save failed and which are waiting to be tried again.
+     */
+    public int getFailedCount() {
+        return failed.size();
+    }
+
+    /**
+     * Tries saving the chunks which failed to save before once more, then blocks until every save queued so far
+     * has finished.
+     */
+    public void flush() {
+        for(Chunk chunk : failed.values()) {
+            if(failed.remove(chunk.getKey(), chunk)) {
+                write(chunk);
+            }
+        }
+
+        synchronized (flushLock) {
+            while(writesInFlight > 0) {
+                try {
+                    flushLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.warn("Interrupted while waiting for {} chunk saves", writesInFlight);
+                    return;
+                }
+            }
+        }
+    }
+
+    public void shutdown() {
+        flush();
+        executor.shutdown();
+    }
+
+    private void save(Chunk chunk) {
+        boolean saved = false;
+        saving.add(chunk.getKey());
+
+        try {
+            synchronized (chunk) {
+                int modificationCount = chunk.getModificationCount();
+                chunkProvider.unload(chunk);
+                chunk.markSaved(modificationCount);
+                saved = true;
+            }
+        } catch (Exception e) {
+            logger.error("Failed to save chunk " + chunk.getChunkPosition() + ", it's kept in memory to retry later", e);
+        } finally {
+            if(saved) {
+                pending.remove(chunk.getKey(), chunk);
+            } else if(pending.get(chunk.getKey()) == chunk) {
+                failed.put(chunk.getKey(), chunk);
+            }
+
+            synchronized (flushLock) {
+                saving.remove(chunk.getKey());
+                writesInFlight--;
+                flushLock.notifyAll();
+            }
+        }
+    }
+}
@@ -1,60 +1,80 @@
 package sk.accerek.hamlet.world.tile;
 
-import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import lombok.Getter;
-import sk.accerek.hamlet.Hamlet;
-import sk.accerek.hamlet.render.TextureProvider;
 import sk.accerek.hamlet.world.base.Chunk;
 import sk.accerek.hamlet.world.base.Pair;
 
-import java.util.Random;
-
+/**
+ * A view of one tile of a {@link Chunk}. Chunks store their tiles as primitive arrays and only create these on
+ * demand, so holding on to one doesn't reflect later changes to the chunk. {@link Chunk#getTile(int, int)}
+ * creates a new view every time, while {@link sk.accerek.hamlet.world.base.World#getTile(int, int)} reuses one.
+ */
 public class Tile {
-    private @Getter Pair<Integer, Integer> positionInChunk;
     private @Getter Chunk chunk;
-    private final @Getter TileType tileType;
+    private @Getter TileType tileType;
+    private @Getter int xInChunk;
+    private @Getter int yInChunk;
+    private @Getter int variant;
 
-    private @Getter Texture gdxTexture;
+    public Tile(TileType type, Chunk chunk, int xInChunk, int yInChunk, int variant) {
+        set(type, chunk, xInChunk, yInChunk, variant);
+    }
 
-    public Tile(TileType type, Chunk chunk, Pair<Integer, Integer> positionInChunk) {
+    /**
+     * Points the view at another tile.
+     */
+    public Tile set(TileType type, Chunk chunk, int xInChunk, int yInChunk, int variant) {
         this.chunk = chunk;
-        this.positionInChunk = positionInChunk;
+        this.xInChunk = xInChunk;
+        this.yInChunk = yInChunk;
         this.tileType = type;
+        this.variant = variant;
+
+        return this;
+    }
 
-        Texture[] textures = type.getGdxTextures();
-        if(textures.length > 1) {
-            Random random = new Random();
-            this.gdxTexture = textures[random.nextInt(textures.length)];
-        } else {
-            this.gdxTexture = textures[0];
-        }
+    public TextureRegion getRegion() {
+        return tileType.getRegion(variant);
     }
 
     public void render(SpriteBatch spriteBatch) {
-        Pair<Integer, Integer> position = getPixelPosition();
+        spriteBatch.draw(getRegion(), getPixelX(), getPixelY(), Chunk.GRID_SIZE, Chunk.GRID_SIZE);
+    }
+
+    public Pair<Integer, Integer> getPositionInChunk() {
+        return new Pair<>(xInChunk, yInChunk);
+    }
 
-        spriteBatch.draw(gdxTexture, position.getX(), position.getY(), Chunk.GRID_SIZE, Chunk.GRID_SIZE);
+    public int getPixelX() {
+        return chunk.getChunkX() * Chunk.CHUNK_PIXEL_SIZE + xInChunk * Chunk.GRID_SIZE;
+    }
+
+    public int getPixelY() {
+        return chunk.getChunkY() * Chunk.CHUNK_PIXEL_SIZE + yInChunk * Chunk.GRID_SIZE;
     }
 
     public Pair<Integer, Integer> getPixelPosition() {
-        Pair<Integer, Integer> chunkPosition = chunk.getChunkPosition();
-        return new Pair<>(
-                chunkPosition.getX() * (Chunk.CHUNK_SIZE * Chunk.GRID_SIZE) + positionInChunk.getX() * Chunk.GRID_SIZE,
-                chunkPosition.getY() * (Chunk.CHUNK_SIZE * Chunk.GRID_SIZE) + positionInChunk.getY() * Chunk.GRID_SIZE);
+        return new Pair<>(getPixelX(), getPixelY());
+    }
+
+    public int getWorldX() {
+        return (chunk.getChunkX() << Chunk.BIT_SIZE) + xInChunk;
+    }
+
+    public int getWorldY() {
+        return (chunk.getChunkY() << Chunk.BIT_SIZE) + yInChunk;
     }
 
     public Pair<Integer, Integer> getWorldPosition() {
-        Pair<Integer, Integer> chunkPosition = chunk.getChunkPosition();
-        return new Pair<>(
-                chunkPosition.getX() * Chunk.CHUNK_SIZE + positionInChunk.getX(),
-                chunkPosition.getY() * Chunk.CHUNK_SIZE + positionInChunk.getY());
+        return new Pair<>(getWorldX(), getWorldY());
     }
 
     @Override
     public String toString() {
         return "Tile{" +
-                "positionInChunk=" + positionInChunk +
+                "positionInChunk=" + getPositionInChunk() +
                 ", position=" + getWorldPosition() +
                 ", tileType=" + tileType +
                 '}';
@@ -1,24 +1,32 @@
 package sk.accerek.hamlet.world.tile;
 
-import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import lombok.Getter;
 import sk.accerek.hamlet.Hamlet;
 import sk.accerek.hamlet.render.TextureProvider;
+import sk.accerek.hamlet.world.base.Chunk;
 
 public enum TileType {
     ROCKY_FLOOR("Rocky Floor", "rocky_floor.png"),
     GRASS("Grass", "grass/grass_1.png", "grass/grass_2.png", "grass/grass_3.png", "grass/grass_4.png", "grass/grass_5.png");
 
+    private static final TileType[] VALUES = values();
+
     private final @Getter String name;
-    private final @Getter Texture[] gdxTextures;
+    private final String[] textureNames;
+
+    private TextureRegion[] regions;
 
     TileType(String name, String... textureNames) {
         this.name = name;
 
-        TextureProvider textureProvider = Hamlet.get().getTextureProvider();
-        this.gdxTextures = new Texture[textureNames.length];
+        if(textureNames.length > Chunk.MAX_VARIANTS) {
+            throw new IllegalArgumentException(name + " has more variants than a chunk can store");
+        }
+
+        this.textureNames = new String[textureNames.length];
         for(int i = 0; i < textureNames.length; i++) {
-            this.gdxTextures[i] = textureProvider.getTexture("tiles/" + textureNames[i]);
+            this.textureNames[i] = "tiles/" + textureNames[i];
         }
     }
 
@@ -26,11 +34,38 @@ public enum TileType {
         return this.ordinal();
     }
 
+    public int getVariantCount() {
+        return textureNames.length;
+    }
+
+    /**
+     * Regions are looked up on first use, so the tile types can be touched before (or without) a GL context.
+     */
+    public TextureRegion[] getRegions() {
+        if(regions == null) {
+            TextureProvider textureProvider = Hamlet.get().getTextureProvider();
+
+            TextureRegion[] resolved = new TextureRegion[textureNames.length];
+            for(int i = 0; i < textureNames.length; i++) {
+                resolved[i] = textureProvider.getRegion(textureNames[i]);
+            }
+
+            regions = resolved;
+        }
+
+        return regions;
+    }
+
+    public TextureRegion getRegion(int variant) {
+        TextureRegion[] regions = getRegions();
+        return regions[variant < regions.length ? variant : 0];
+    }
+
     public static TileType getById(int id) {
-        if(id > TileType.values().length || id < 0) {
+        if(id >= VALUES.length || id < 0) {
             return null;
         }
 
-        return TileType.values()[id];
+        return VALUES[id];
     }
 }
@@ -0,0 +1,283 @@
+package sk.accerek.hamlet.desktop;
+
+import com.badlogic.gdx.Files;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.lwjgl.LwjglFiles;
+import org.apache.commons.cli.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sk.accerek.hamlet.world.base.Chunk;
+import sk.accerek.hamlet.world.base.ChunkKey;
+import sk.accerek.hamlet.world.generation.ProceduralChunkProvider;
+import sk.accerek.hamlet.world.storage.ChunkStorage;
+import sk.accerek.hamlet.world.storage.NbtChunkProvider;
+import sk.accerek.hamlet.world.storage.RegionChunkProvider;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Works on worlds without opening a window or starting the game, so it can run on build machines. Worlds are
+ * looked up in the {@code worlds} directory under the working directory.
+ * <p>
+ * {@code generate} saves the chunks of a rectangle from the {@link ProceduralChunkProvider}, and {@code convert}
+ * copies every chunk of a world to another storage format. Both spread the chunks over all cores (or
+ * {@code --threads}), and only the chunks being worked on are in memory at any time.
+ */
+public class WorldTool {
+    private static final Logger logger = LoggerFactory.getLogger(WorldTool.class);
+
+    private static final long PROGRESS_INTERVAL = 2000;
+
+    public static void main(String[] args) {
+        Options options = new Options();
+        options.addOption(Option.builder("w").longOpt("world").hasArg().argName("name").desc("World to work on").build());
+        options.addOption(Option.builder("f").longOpt("format").hasArg().argName("nbt|region").desc("Storage format of the world, nbt by default").build());
+        options.addOption(Option.builder("s").longOpt("seed").hasArg().argName("seed").desc("Seed of the world, 0 by default").build());
+        options.addOption(Option.builder("t").longOpt("threads").hasArg().argName("count").desc("Number of threads, all cores by default").build());
+        options.addOption(Option.builder().longOpt("from").hasArg().argName("x,y").desc("generate: first corner of the area, in chunks").build());
+        options.addOption(Option.builder().longOpt("to").hasArg().argName("x,y").desc("generate: second corner of the area, in chunks").build());
+        options.addOption(Option.builder().longOpt("overwrite").desc("generate: replace chunks which are already saved").build());
+        options.addOption(Option.builder().longOpt("target-world").hasArg().argName("name").desc("convert: world to write to, the same world by default").build());
+        options.addOption(Option.builder().longOpt("target-format").hasArg().argName("nbt|region").desc("convert: storage format to write").build());
+        options.addOption(Option.builder("h").longOpt("help").desc("Show a list of arguments").build());
+
+        CommandLine commandLine;
+        try {
+            commandLine = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            logger.error(e.getMessage());
+            printHelp(options);
+            System.exit(1);
+            return;
+        }
+
+        if(commandLine.hasOption("help") || commandLine.getArgList().size() != 1 || !commandLine.hasOption("world")) {
+            printHelp(options);
+            System.exit(commandLine.hasOption("help") ? 0 : 1);
+            return;
+        }
+
+        // The storage providers resolve worlds through Gdx.files, which is all they need from libGDX
+        Gdx.files = new LwjglFiles();
+
+        boolean succeeded;
+        try {
+            String command = commandLine.getArgList().get(0);
+            switch (command) {
+                case "generate":
+                    succeeded = generate(commandLine);
+                    break;
+                case "convert":
+                    succeeded = convert(commandLine);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown command " + command);
+            }
+        } catch (IllegalArgumentException e) {
+            logger.error(e.getMessage());
+            printHelp(options);
+            succeeded = false;
+        }
+
+        System.exit(succeeded ? 0 : 1);
+    }
+
+    private static boolean generate(CommandLine commandLine) {
+        long seed = Long.parseLong(commandLine.getOptionValue("seed", "0"));
+        int[] from = parsePosition(commandLine.getOptionValue("from"), "--from");
+        int[] to = parsePosition(commandLine.getOptionValue("to"), "--to");
+        boolean overwrite = commandLine.hasOption("overwrite");
+
+        int minX = Math.min(from[0], to[0]);
+        int minY = Math.min(from[1], to[1]);
+        int width = Math.abs(to[0] - from[0]) + 1;
+        int count = width * (Math.abs(to[1] - from[1]) + 1);
+
+        ChunkStorage storage = openStorage(commandLine.getOptionValue("world"), commandLine.getOptionValue("format", "nbt"), seed);
+        if(!storage.isWritable()) {
+            logger.error("World " + commandLine.getOptionValue("world") + " can't be written to");
+            storage.dispose();
+            return false;
+        }
+
+        ProceduralChunkProvider generator = new ProceduralChunkProvider(seed);
+        AtomicInteger skipped = new AtomicInteger();
+
+        boolean succeeded = run("Generating", count, getThreads(commandLine), i -> {
+            int x = minX + i % width;
+            int y = minY + i / width;
+            if(!overwrite && storage.exists(x, y)) {
+                skipped.incrementAndGet();
+                return true;
+            }
+
+            return save(storage, generator.generate(x, y));
+        });
+
+        storage.dispose();
+
+        if(skipped.get() > 0) {
+            logger.info("Skipped {} chunks which were already saved", skipped.get());
+        }
+
+        return succeeded;
+    }
+
+    private static boolean convert(CommandLine commandLine) {
+        long seed = Long.parseLong(commandLine.getOptionValue("seed", "0"));
+        String sourceWorld = commandLine.getOptionValue("world");
+        String sourceFormat = commandLine.getOptionValue("format", "nbt");
+        String targetWorld = commandLine.getOptionValue("target-world", sourceWorld);
+        String targetFormat = commandLine.getOptionValue("target-format");
+        if(targetFormat == null) {
+            throw new IllegalArgumentException("convert needs --target-format");
+        }
+
+        ChunkStorage source = openStorage(sourceWorld, sourceFormat, seed);
+        ChunkStorage target = openStorage(targetWorld, targetFormat, seed);
+        if(!target.isWritable()) {
+            logger.error("World " + targetWorld + " can't be written to");
+            source.dispose();
+            target.dispose();
+            return false;
+        }
+
+        long[] keys = source.getStoredChunks();
+
+        boolean succeeded = run("Converting", keys.length, getThreads(commandLine), i -> {
+            int x = ChunkKey.getX(keys[i]);
+            int y = ChunkKey.getY(keys[i]);
+
+            Optional<Chunk> chunk = source.provide(x, y);
+            if(!chunk.isPresent()) {
+                logger.error("Chunk {" + x + ", " + y + "} couldn't be read");
+                return false;
+            }
+
+            return save(target, chunk.get());
+        });
+
+        source.dispose();
+        target.dispose();
+
+        return succeeded;
+    }
+
+    private static boolean save(ChunkStorage storage, Chunk chunk) {
+        try {
+            storage.unload(chunk);
+            return true;
+        } catch (IOException e) {
+            logger.error("Chunk {" + chunk.getChunkX() + ", " + chunk.getChunkY() + "} couldn't be saved", e);
+            return false;
+        }
+    }
+
+    /**
+     * Runs the job for every index from 0 to {@code count} on a pool of {@code threads} threads, logging the
+     * throughput while it runs and once it's done.
+     */
+    private static boolean run(String name, int count, int threads, ChunkJob job) {
+        logger.info("{} {} chunks on {} threads", name, count, threads);
+
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+
+        ForkJoinTask<?> task = pool.submit(() -> IntStream.range(0, count).parallel().forEach(i -> {
+            boolean succeeded;
+            try {
+                succeeded = job.run(i);
+            } catch (Exception e) {
+                logger.error("Failed to process chunk #" + i, e);
+                succeeded = false;
+            }
+
+            if(!succeeded) {
+                failed.incrementAndGet();
+            }
+
+            done.incrementAndGet();
+        }));
+
+        while(true) {
+            try {
+                task.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+                break;
+            } catch (TimeoutException e) {
+                double seconds = (System.nanoTime() - start) / 1e9;
+                logger.info("{}/{} chunks, {} chunks/s", done.get(), count, String.format("%.0f", done.get() / seconds));
+            } catch (InterruptedException | ExecutionException e) {
+                logger.error(name + " failed", e);
+                pool.shutdownNow();
+                return false;
+            }
+        }
+
+        pool.shutdown();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        logger.info("{} {} chunks took {} s, {} chunks/s on {} threads ({} failed)", name, count,
+                String.format("%.2f", seconds), String.format("%.0f", count / seconds), threads, failed.get());
+
+        return failed.get() == 0;
+    }
+
+    private static ChunkStorage openStorage(String world, String format, long seed) {
+        switch (format) {
+            case "nbt":
+                return new NbtChunkProvider(world, Files.FileType.Local, seed);
+            case "region":
+                return new RegionChunkProvider(world, Files.FileType.Local, seed);
+            default:
+                throw new IllegalArgumentException("Unknown storage format " + format);
+        }
+    }
+
+    private static int getThreads(CommandLine commandLine) {
+        int threads = Integer.parseInt(commandLine.getOptionValue("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        if(threads < 1) {
+            throw new IllegalArgumentException("--threads has to be at least 1");
+        }
+
+        return threads;
+    }
+
+    private static int[] parsePosition(String value, String option) {
+        if(value == null) {
+            throw new IllegalArgumentException("generate needs " + option);
+        }
+
+        String[] parts = value.split(",");
+        if(parts.length != 2) {
+            throw new IllegalArgumentException(option + " has to be a chunk position like 0,0");
+        }
+
+        try {
+            return new int[] { Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()) };
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " has to be a chunk position like 0,0");
+        }
+    }
+
+    /**
+     * Works on the chunk with the given index, returning or throwing when it failed.
+     */
+    @FunctionalInterface
+    private interface ChunkJob {
+        boolean run(int index);
+    }
+
+    private static void printHelp(Options options) {
+        new HelpFormatter().printHelp("worldtool generate|convert", "Hamlet world tool", options, "", true);
+    }
+}